@@ -6,10 +6,7 @@ package bagpipeplayer;
 
 import abc.notation.Tune;
 import abc.parser.TuneParser;
-import abc.ui.scoretemplates.ScoreAttribute;
-import abc.ui.swing.JTune;
 import java.awt.Image;
-import java.io.FileNotFoundException;
 import java.io.IOException;
 import org.jdesktop.application.ResourceMap;
 import org.jdesktop.application.SingleFrameApplication;
@@ -21,9 +18,15 @@ import javax.swing.Timer;
 import javax.swing.Icon;
 import javax.swing.JDialog;
 import javax.swing.JFrame;
+import java.awt.print.PrinterJob;
 import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
 import javax.imageio.ImageIO;
+import javax.sound.midi.MidiUnavailableException;
 import javax.swing.JFileChooser;
+import javax.swing.SwingWorker;
 import javax.swing.filechooser.FileFilter;
 import org.jdesktop.application.Action;
 
@@ -101,8 +104,39 @@ public class BagpipePlayerView extends FrameView {
             }
         });
         
-        canvas.getTemplate().setAttribute(ScoreAttribute.NOTE_STEM_POLICY, JTune.STEMS_DOWN);
-        canvas.getTemplate().setAttributeSize(ScoreAttribute.NOTATION_SIZE, 50);
+        documents = new TuneDocuments(resourceMap.getInteger("Documents.memoryBudget") * 1024L * 1024L);
+        player.addListener(new ScorePlayer.Listener() {
+            public void tuneStarted(PlaybackItem item) {
+                playing = item;
+                // tunes of a set are shown as they come up, in the tab of their file
+                TuneDocument d = item.getSource() != null
+                        ? documents.find(item.getSource()) : documents.find(item.getTune());
+                if (d == null) {
+                    d = item.getSource() != null
+                            ? new TuneDocument(item.getSource()) : new TuneDocument(item.getTune(), titleOf(item.getTune()));
+                    addDocument(d);
+                }
+                // the set player loads its own copy, the cursor needs the tune playing
+                d.useTune(item.getTune());
+                if (d != document) {
+                    scoreTabs.setSelectedComponent(d.getView());
+                } else if (tune != item.getTune()) {
+                    showSelected();
+                } else {
+                    attachCursor();
+                }
+            }
+
+            public void positionChanged(long tick) {
+                if (cursor != null) cursor.positionChanged(tick);
+            }
+
+            public void playbackStopped() {
+                if (cursor != null) cursor.playbackStopped();
+                cursor = null;
+                playing = null;
+            }
+        });
     }
 
     /**
@@ -128,17 +162,25 @@ public class BagpipePlayerView extends FrameView {
     private void initComponents() {
 
         mainPanel = new javax.swing.JPanel();
-        jScrollBar1 = new javax.swing.JScrollBar();
-        jScrollBar2 = new javax.swing.JScrollBar();
         jToolBar1 = new javax.swing.JToolBar();
         jButton1 = new javax.swing.JButton();
-        jPanel1 = new javax.swing.JPanel();
-        canvas = new abc.ui.swing.JScoreComponent();
+        playButton = new javax.swing.JButton();
+        stopButton = new javax.swing.JButton();
+        loopButton = new javax.swing.JButton();
+        tempoLabel = new javax.swing.JLabel();
+        tempoSpinner = new javax.swing.JSpinner();
+        transposeLabel = new javax.swing.JLabel();
+        transposeSpinner = new javax.swing.JSpinner();
+        scoreTabs = new javax.swing.JTabbedPane();
         jScrollPane1 = new javax.swing.JScrollPane();
         editorBox = new javax.swing.JTextArea();
         menuBar = new javax.swing.JMenuBar();
         javax.swing.JMenu fileMenu = new javax.swing.JMenu();
         jMenuItem1 = new javax.swing.JMenuItem();
+        javax.swing.JMenuItem closeMenuItem = new javax.swing.JMenuItem();
+        javax.swing.JMenuItem setMenuItem = new javax.swing.JMenuItem();
+        javax.swing.JMenuItem bandMenuItem = new javax.swing.JMenuItem();
+        javax.swing.JMenuItem printMenuItem = new javax.swing.JMenuItem();
         javax.swing.JMenuItem exitMenuItem = new javax.swing.JMenuItem();
         javax.swing.JMenu helpMenu = new javax.swing.JMenu();
         javax.swing.JMenuItem aboutMenuItem = new javax.swing.JMenuItem();
@@ -151,15 +193,6 @@ public class BagpipePlayerView extends FrameView {
 
         mainPanel.setName("mainPanel"); // NOI18N
 
-        jScrollBar1.setMaximum(0);
-        jScrollBar1.setEnabled(false);
-        jScrollBar1.setName("jScrollBar1"); // NOI18N
-
-        jScrollBar2.setMaximum(0);
-        jScrollBar2.setOrientation(javax.swing.JScrollBar.HORIZONTAL);
-        jScrollBar2.setEnabled(false);
-        jScrollBar2.setName("jScrollBar2"); // NOI18N
-
         jToolBar1.setRollover(true);
         jToolBar1.setName("jToolBar1"); // NOI18N
 
@@ -173,32 +206,63 @@ public class BagpipePlayerView extends FrameView {
         jButton1.setVerticalTextPosition(javax.swing.SwingConstants.BOTTOM);
         jToolBar1.add(jButton1);
 
-        jPanel1.setBackground(resourceMap.getColor("jPanel1.background")); // NOI18N
-        jPanel1.setName("jPanel1"); // NOI18N
-
-        canvas.setName("canvas"); // NOI18N
-
-        javax.swing.GroupLayout canvasLayout = new javax.swing.GroupLayout(canvas);
-        canvas.setLayout(canvasLayout);
-        canvasLayout.setHorizontalGroup(
-            canvasLayout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
-            .addGap(0, 619, Short.MAX_VALUE)
-        );
-        canvasLayout.setVerticalGroup(
-            canvasLayout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
-            .addGap(0, 255, Short.MAX_VALUE)
-        );
+        playButton.setAction(actionMap.get("play")); // NOI18N
+        playButton.setFocusable(false);
+        playButton.setHorizontalTextPosition(javax.swing.SwingConstants.CENTER);
+        playButton.setName("playButton"); // NOI18N
+        playButton.setVerticalTextPosition(javax.swing.SwingConstants.BOTTOM);
+        jToolBar1.add(playButton);
+
+        stopButton.setAction(actionMap.get("stop")); // NOI18N
+        stopButton.setFocusable(false);
+        stopButton.setHorizontalTextPosition(javax.swing.SwingConstants.CENTER);
+        stopButton.setName("stopButton"); // NOI18N
+        stopButton.setVerticalTextPosition(javax.swing.SwingConstants.BOTTOM);
+        jToolBar1.add(stopButton);
+
+        loopButton.setAction(actionMap.get("loop")); // NOI18N
+        loopButton.setFocusable(false);
+        loopButton.setHorizontalTextPosition(javax.swing.SwingConstants.CENTER);
+        loopButton.setName("loopButton"); // NOI18N
+        loopButton.setVerticalTextPosition(javax.swing.SwingConstants.BOTTOM);
+        jToolBar1.add(loopButton);
+
+        tempoLabel.setText(resourceMap.getString("tempoLabel.text")); // NOI18N
+        tempoLabel.setName("tempoLabel"); // NOI18N
+        jToolBar1.add(tempoLabel);
+
+        tempoSpinner.setModel(new javax.swing.SpinnerNumberModel(100, 25, 200, 5));
+        tempoSpinner.setToolTipText(resourceMap.getString("tempoSpinner.toolTipText")); // NOI18N
+        tempoSpinner.setMaximumSize(new java.awt.Dimension(60, 22));
+        tempoSpinner.setName("tempoSpinner"); // NOI18N
+        tempoSpinner.addChangeListener(new javax.swing.event.ChangeListener() {
+            public void stateChanged(javax.swing.event.ChangeEvent evt) {
+                tempoSpinnerStateChanged(evt);
+            }
+        });
+        jToolBar1.add(tempoSpinner);
+
+        transposeLabel.setText(resourceMap.getString("transposeLabel.text")); // NOI18N
+        transposeLabel.setName("transposeLabel"); // NOI18N
+        jToolBar1.add(transposeLabel);
+
+        transposeSpinner.setModel(new javax.swing.SpinnerNumberModel(0, -12, 12, 1));
+        transposeSpinner.setToolTipText(resourceMap.getString("transposeSpinner.toolTipText")); // NOI18N
+        transposeSpinner.setMaximumSize(new java.awt.Dimension(60, 22));
+        transposeSpinner.setName("transposeSpinner"); // NOI18N
+        transposeSpinner.addChangeListener(new javax.swing.event.ChangeListener() {
+            public void stateChanged(javax.swing.event.ChangeEvent evt) {
+                transposeSpinnerStateChanged(evt);
+            }
+        });
+        jToolBar1.add(transposeSpinner);
 
-        javax.swing.GroupLayout jPanel1Layout = new javax.swing.GroupLayout(jPanel1);
-        jPanel1.setLayout(jPanel1Layout);
-        jPanel1Layout.setHorizontalGroup(
-            jPanel1Layout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
-            .addComponent(canvas, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE)
-        );
-        jPanel1Layout.setVerticalGroup(
-            jPanel1Layout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
-            .addComponent(canvas, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE)
-        );
+        scoreTabs.setName("scoreTabs"); // NOI18N
+        scoreTabs.addChangeListener(new javax.swing.event.ChangeListener() {
+            public void stateChanged(javax.swing.event.ChangeEvent evt) {
+                scoreTabsStateChanged(evt);
+            }
+        });
 
         jScrollPane1.setName("jScrollPane1"); // NOI18N
 
@@ -213,28 +277,15 @@ public class BagpipePlayerView extends FrameView {
         mainPanelLayout.setHorizontalGroup(
             mainPanelLayout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
             .addComponent(jScrollPane1, javax.swing.GroupLayout.DEFAULT_SIZE, 642, Short.MAX_VALUE)
-            .addGroup(mainPanelLayout.createSequentialGroup()
-                .addGroup(mainPanelLayout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
-                    .addGroup(mainPanelLayout.createSequentialGroup()
-                        .addComponent(jToolBar1, javax.swing.GroupLayout.DEFAULT_SIZE, 222, Short.MAX_VALUE)
-                        .addGap(403, 403, 403))
-                    .addGroup(javax.swing.GroupLayout.Alignment.TRAILING, mainPanelLayout.createSequentialGroup()
-                        .addGroup(mainPanelLayout.createParallelGroup(javax.swing.GroupLayout.Alignment.TRAILING)
-                            .addComponent(jPanel1, javax.swing.GroupLayout.Alignment.LEADING, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE)
-                            .addComponent(jScrollBar2, javax.swing.GroupLayout.DEFAULT_SIZE, 619, Short.MAX_VALUE))
-                        .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)))
-                .addComponent(jScrollBar1, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
+            .addComponent(jToolBar1, javax.swing.GroupLayout.DEFAULT_SIZE, 642, Short.MAX_VALUE)
+            .addComponent(scoreTabs, javax.swing.GroupLayout.DEFAULT_SIZE, 642, Short.MAX_VALUE)
         );
         mainPanelLayout.setVerticalGroup(
             mainPanelLayout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
             .addGroup(mainPanelLayout.createSequentialGroup()
                 .addComponent(jToolBar1, javax.swing.GroupLayout.PREFERRED_SIZE, 25, javax.swing.GroupLayout.PREFERRED_SIZE)
                 .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
-                .addGroup(mainPanelLayout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING, false)
-                    .addComponent(jPanel1, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE)
-                    .addComponent(jScrollBar1, javax.swing.GroupLayout.DEFAULT_SIZE, 255, Short.MAX_VALUE))
-                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
-                .addComponent(jScrollBar2, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                .addComponent(scoreTabs, javax.swing.GroupLayout.DEFAULT_SIZE, 255, Short.MAX_VALUE)
                 .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
                 .addComponent(jScrollPane1, javax.swing.GroupLayout.DEFAULT_SIZE, 146, Short.MAX_VALUE))
         );
@@ -250,6 +301,24 @@ public class BagpipePlayerView extends FrameView {
         jMenuItem1.setName("jMenuItem1"); // NOI18N
         fileMenu.add(jMenuItem1);
 
+        closeMenuItem.setAction(actionMap.get("closeTab")); // NOI18N
+        closeMenuItem.setAccelerator(javax.swing.KeyStroke.getKeyStroke(java.awt.event.KeyEvent.VK_W, java.awt.event.InputEvent.CTRL_MASK));
+        closeMenuItem.setName("closeMenuItem"); // NOI18N
+        fileMenu.add(closeMenuItem);
+
+        setMenuItem.setAction(actionMap.get("showSetBuilder")); // NOI18N
+        setMenuItem.setName("setMenuItem"); // NOI18N
+        fileMenu.add(setMenuItem);
+
+        bandMenuItem.setAction(actionMap.get("playBandScore")); // NOI18N
+        bandMenuItem.setName("bandMenuItem"); // NOI18N
+        fileMenu.add(bandMenuItem);
+
+        printMenuItem.setAction(actionMap.get("printPreview")); // NOI18N
+        printMenuItem.setAccelerator(javax.swing.KeyStroke.getKeyStroke(java.awt.event.KeyEvent.VK_P, java.awt.event.InputEvent.CTRL_MASK));
+        printMenuItem.setName("printMenuItem"); // NOI18N
+        fileMenu.add(printMenuItem);
+
         exitMenuItem.setAction(actionMap.get("quit")); // NOI18N
         exitMenuItem.setName("exitMenuItem"); // NOI18N
         fileMenu.add(exitMenuItem);
@@ -311,48 +380,214 @@ public class BagpipePlayerView extends FrameView {
     }// </editor-fold>//GEN-END:initComponents
 
     /**
-     * Show the file chooser and act accordingly for the chosen file type.
+     * Show the file chooser and open the chosen file, whatever its name.
      */
     @Action
     public void openFile() {
         int returnVal = fileChooser.showOpenDialog(mainPanel);
         if (returnVal == JFileChooser.APPROVE_OPTION) {
-            File f = fileChooser.getSelectedFile();
+            open(fileChooser.getSelectedFile());
+        }
+    }
+
+    /**
+     * Closes the tab shown.
+     */
+    @Action
+    public void closeTab() {
+        if (document == null) return;
+        if (playing != null && playing.getTune() == document.peekTune()) {
+            stop();
+        }
+        TuneDocument d = document;
+        documents.remove(d);
+        scoreTabs.remove(d.getView());
+    }
+    
+    /**
+     * Shows a file in its tab, opening a new tab if it isn't open yet.
+     */
+    private void open(File f) {
+        TuneDocument d = documents.find(f);
+        if (d == null) {
+            d = new TuneDocument(f);
+            addDocument(d);
+        }
+        scoreTabs.setSelectedComponent(d.getView());
+        if (tune == null) {
+            // couldn't be loaded
+            closeTab();
+        }
+    }
+    
+    private void updateView(String s) {
+        updateView(new TuneParser().parse(s));
+    }
+    
+    private void updateView(Tune t) {
+        TuneDocument d = new TuneDocument(t, titleOf(t));
+        addDocument(d);
+        scoreTabs.setSelectedComponent(d.getView());
+    }
+    
+    private void addDocument(TuneDocument d) {
+        documents.add(d);
+        scoreTabs.addTab(d.getTitle(), d.getView());
+    }
+    
+    private String titleOf(Tune t) {
+        String[] titles = t.getTitles();
+        return titles != null && titles.length > 0 ? titles[0] : getResourceMap().getString("untitledTab.text");
+    }
+    
+    /**
+     * Renders the document of the selected tab, which may have been dropped
+     * to save memory while the tab was in the background.
+     */
+    private void showSelected() {
+        int i = scoreTabs.getSelectedIndex();
+        document = i < 0 ? null : documents.get(i);
+        canvas = null;
+        tune = null;
+        if (document != null) {
             try {
-                if(f.getName().endsWith(".abc")) {
-                    updateView(f);
-                } else if(f.getName().endsWith(".bww")) {
-                    Bww2tune test = new Bww2tune(f);
-                    Tune t = test.getTune();
-                    System.out.println(test.getBwwMusicAsString());
-                    updateView(t);
-                }
-            } catch (FileNotFoundException ex) {
-                System.err.println(ex.getLocalizedMessage());
+                canvas = documents.show(document, playing == null ? null : playing.getTune());
+                tune = document.getTune();
             } catch (IOException ex) {
                 System.err.println(ex.getLocalizedMessage());
             }
         }
+        attachCursor();
     }
     
-    private void updateView(File f) throws IOException {
-        canvas.setTune(new TuneParser().parse(f));
-        updateScrollbars();
+    /**
+     * Highlights the playing notes if the playing tune is shown.
+     */
+    private void attachCursor() {
+        if (cursor != null) cursor.playbackStopped();
+        cursor = null;
+        if (playing != null && canvas != null && playing.getTune() == tune) {
+            cursor = new PlaybackCursor(canvas, tune, playing.getEvents());
+        }
     }
     
-    private void updateView(String s) {
-        canvas.setTune(new TuneParser().parse(s));
-        updateScrollbars();
+    /**
+     * Plays the tune shown in the score and highlights the notes as they are played.
+     */
+    @Action
+    public void play() {
+        if (tune == null) return;
+        setPlayer.stop();
+        try {
+            player.play(new PlaybackItem(tune, document.getSource(), player.toEvents(tune), 0));
+        } catch (MidiUnavailableException ex) {
+            System.err.println(ex.getLocalizedMessage());
+        }
     }
     
-    private void updateView(Tune t) {
-        canvas.setTune(t);
-        updateScrollbars();
+    /**
+     * Asks for the parts of a band score (pipes, seconds, snare, tenor, bass,
+     * one file each) and plays them together, showing the pipe part.
+     */
+    @Action
+    public void playBandScore() {
+        fileChooser.setMultiSelectionEnabled(true);
+        int returnVal = fileChooser.showOpenDialog(mainPanel);
+        fileChooser.setMultiSelectionEnabled(false);
+        if (returnVal != JFileChooser.APPROVE_OPTION) return;
+        stop();
+        final List<File> parts = Arrays.asList(fileChooser.getSelectedFiles());
+        // the parts are parsed in the background, playback starts when all are ready
+        bandLoader = new SwingWorker<BandScore, Void>() {
+            @Override
+            protected BandScore doInBackground() throws Exception {
+                return BandScore.load(parts, player);
+            }
+
+            @Override
+            protected void done() {
+                if (bandLoader != this) return;
+                bandLoader = null;
+                try {
+                    player.play(get().toPlaybackItem(0));
+                } catch (ExecutionException ex) {
+                    System.err.println(ex.getCause().getLocalizedMessage());
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                } catch (MidiUnavailableException ex) {
+                    System.err.println(ex.getLocalizedMessage());
+                }
+            }
+        };
+        bandLoader.execute();
+    }
+
+    /**
+     * Shows the tune as it will be printed, the preview prints it.
+     */
+    @Action
+    public void printPreview() {
+        if (tune == null) return;
+        PrinterJob job = PrinterJob.getPrinterJob();
+        JFrame mainFrame = BagpipePlayerApp.getApplication().getMainFrame();
+        PrintPreviewDialog preview = new PrintPreviewDialog(mainFrame, new ScoreBook(tune, job.defaultPage()), job);
+        preview.setLocationRelativeTo(mainFrame);
+        BagpipePlayerApp.getApplication().show(preview);
+    }
+
+    /**
+     * Plays the bars selected in the score over and over until stopped.
+     */
+    @Action
+    public void loop() {
+        if (tune == null || canvas.getSelectionStart() == null) return;
+        setPlayer.stop();
+        PlaybackItem item = PracticeLoop.create(tune, player.toEvents(tune),
+                canvas.getSelectionStart(), canvas.getSelectionEnd());
+        if (item == null) return;
+        try {
+            player.play(item);
+        } catch (MidiUnavailableException ex) {
+            System.err.println(ex.getLocalizedMessage());
+        }
     }
     
-    private void updateScrollbars() {
-        // TODO
+    /**
+     * Stops playing.
+     */
+    @Action
+    public void stop() {
+        setPlayer.stop();
+        if (bandLoader != null) {
+            bandLoader.cancel(true);
+            bandLoader = null;
+        }
     }
+
+    /**
+     * Shows the dialog to put together and play a set of tunes.
+     */
+    @Action
+    public void showSetBuilder() {
+        if (setBuilder == null) {
+            JFrame mainFrame = BagpipePlayerApp.getApplication().getMainFrame();
+            setBuilder = new SetBuilderDialog(mainFrame, setPlayer);
+            setBuilder.setLocationRelativeTo(mainFrame);
+        }
+        BagpipePlayerApp.getApplication().show(setBuilder);
+    }
+
+    private void tempoSpinnerStateChanged(javax.swing.event.ChangeEvent evt) {//GEN-FIRST:event_tempoSpinnerStateChanged
+        player.setTempoFactor(((Integer) tempoSpinner.getValue()) / 100f);
+    }//GEN-LAST:event_tempoSpinnerStateChanged
+
+    private void scoreTabsStateChanged(javax.swing.event.ChangeEvent evt) {//GEN-FIRST:event_scoreTabsStateChanged
+        showSelected();
+    }//GEN-LAST:event_scoreTabsStateChanged
+
+    private void transposeSpinnerStateChanged(javax.swing.event.ChangeEvent evt) {//GEN-FIRST:event_transposeSpinnerStateChanged
+        player.setTranspose((Integer) transposeSpinner.getValue());
+    }//GEN-LAST:event_transposeSpinnerStateChanged
     
     private Image getAppIcon() {
         Image i = null;
@@ -367,22 +602,26 @@ public class BagpipePlayerView extends FrameView {
 
 
     // Variables declaration - do not modify//GEN-BEGIN:variables
-    private abc.ui.swing.JScoreComponent canvas;
     private javax.swing.JTextArea editorBox;
     private javax.swing.JFileChooser fileChooser;
     private javax.swing.JButton jButton1;
     private javax.swing.JMenuItem jMenuItem1;
-    private javax.swing.JPanel jPanel1;
-    private javax.swing.JScrollBar jScrollBar1;
-    private javax.swing.JScrollBar jScrollBar2;
+    private javax.swing.JButton loopButton;
     private javax.swing.JScrollPane jScrollPane1;
     private javax.swing.JToolBar jToolBar1;
     private javax.swing.JPanel mainPanel;
     private javax.swing.JMenuBar menuBar;
+    private javax.swing.JButton playButton;
     private javax.swing.JProgressBar progressBar;
+    private javax.swing.JTabbedPane scoreTabs;
     private javax.swing.JLabel statusAnimationLabel;
     private javax.swing.JLabel statusMessageLabel;
     private javax.swing.JPanel statusPanel;
+    private javax.swing.JButton stopButton;
+    private javax.swing.JLabel tempoLabel;
+    private javax.swing.JSpinner tempoSpinner;
+    private javax.swing.JLabel transposeLabel;
+    private javax.swing.JSpinner transposeSpinner;
     // End of variables declaration//GEN-END:variables
 
     private final Timer messageTimer;
@@ -392,4 +631,15 @@ public class BagpipePlayerView extends FrameView {
     private int busyIconIndex = 0;
 
     private JDialog aboutBox;
+    
+    private final ScorePlayer player = new ScorePlayer();
+    private final SetPlayer setPlayer = new SetPlayer(player);
+    private JDialog setBuilder;
+    private SwingWorker<BandScore, Void> bandLoader;
+    private final TuneDocuments documents;
+    private TuneDocument document;
+    private ScoreCanvas canvas;
+    private PlaybackCursor cursor;
+    private PlaybackItem playing;
+    private Tune tune;
 }
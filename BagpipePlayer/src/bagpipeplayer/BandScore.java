@@ -0,0 +1,177 @@
+package bagpipeplayer;
+
+import abc.notation.Tune;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * The parts of a tune for a pipe band: the pipe tune, its harmonies (seconds)
+ * and the snare, tenor and bass drum scores, one file per part.
+ * <p>
+ * The parts are loaded and converted in parallel and played together as one
+ * {@link PlaybackItem}: each part gets a channel of its own, the drums play
+ * on the General MIDI percussion channel with one key per drum, since a drum
+ * score written in BWW only carries the rhythm. The first pipe part leads,
+ * it is the one shown and its tempo is the band's.
+ */
+public class BandScore {
+
+    /**
+     * What a part is played on, recognized by the part suffix of its file name.
+     */
+    public enum Role {
+        PIPES(-1), HARMONY(-1), SNARE(38), TENOR(45), BASS(36);
+
+        private final int key;
+
+        Role(int key) {
+            this.key = key;
+        }
+
+        /**
+         * @return Returns the percussion key of a drum, -1 for pipe parts
+         */
+        public int getKey() {
+            return key;
+        }
+
+        /**
+         * The role is only taken from the part suffix, the last word after a
+         * dash, underscore or opening parenthesis before the extension, so
+         * tune names like "Burnside" or "Bass Rock" don't count.
+         * @param file a part's file, e.g. "Scotland the Brave - snare.bww"
+         * @return Returns the role the part suffix names, PIPES if there is none
+         */
+        public static Role of(File file) {
+            String name = file.getName().toLowerCase();
+            int dot = name.lastIndexOf('.');
+            if (dot > 0) name = name.substring(0, dot);
+            int separator = Math.max(name.lastIndexOf('-'), Math.max(name.lastIndexOf('_'), name.lastIndexOf('(')));
+            if (separator < 0) return PIPES;
+            String part = name.substring(separator + 1).replace(")", "").trim();
+            if (part.equals("snare") || part.equals("snares") || part.equals("side drum")) return SNARE;
+            if (part.equals("tenor") || part.equals("tenors") || part.equals("tenor drum")) return TENOR;
+            if (part.equals("bass") || part.equals("bass drum")) return BASS;
+            if (part.equals("seconds") || part.equals("second") || part.equals("harmony")
+                    || part.equals("harmonies")) {
+                return HARMONY;
+            }
+            return PIPES;
+        }
+    }
+
+    private static class Part {
+        final File file;
+        final Role role;
+        final Tune tune;
+        final MidiEvents events;
+
+        Part(File file, Role role, Tune tune, MidiEvents events) {
+            this.file = file;
+            this.role = role;
+            this.tune = tune;
+            this.events = events;
+        }
+    }
+
+    private final Part lead;
+    private final MidiEvents events;
+    private final MidiEvents[] accompaniment;
+
+    private BandScore(Part lead, MidiEvents events, MidiEvents[] accompaniment) {
+        this.lead = lead;
+        this.events = events;
+        this.accompaniment = accompaniment;
+    }
+
+    /**
+     * Loads the parts of a band score, each on a thread of its own (up to
+     * one per processor).
+     * @param files the parts' files, in any order
+     * @param player the player converting the parts
+     * @return Returns the band score
+     * @throws IOException if a part can't be read
+     * @throws InterruptedException if interrupted while waiting for the parts
+     */
+    public static BandScore load(List<File> files, final ScorePlayer player)
+            throws IOException, InterruptedException {
+        if (files.isEmpty()) throw new IllegalArgumentException("no parts");
+        int threads = Math.min(files.size(), Runtime.getRuntime().availableProcessors());
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Part> parts = new ArrayList<Part>();
+        try {
+            List<Future<Part>> loading = new ArrayList<Future<Part>>();
+            for (final File file : files) {
+                loading.add(pool.submit(new Callable<Part>() {
+                    public Part call() throws IOException {
+                        Tune tune = TuneLoader.load(file);
+                        return new Part(file, Role.of(file), tune, player.toEvents(tune));
+                    }
+                }));
+            }
+            for (Future<Part> part : loading) {
+                parts.add(part.get());
+            }
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof IOException) throw (IOException) ex.getCause();
+            if (ex.getCause() instanceof RuntimeException) throw (RuntimeException) ex.getCause();
+            throw new IOException(ex.getCause().toString());
+        } finally {
+            pool.shutdownNow();
+        }
+
+        Part lead = parts.get(0);
+        for (Part part : parts) {
+            if (part.role == Role.PIPES) {
+                lead = part;
+                break;
+            }
+        }
+        MidiEvents[] accompaniment = new MidiEvents[parts.size() - 1];
+        int count = 0;
+        int channel = 1;
+        for (Part part : parts) {
+            if (part == lead) continue;
+            if (part.role.getKey() >= 0) {
+                accompaniment[count++] = part.events.onChannel(ScorePlayer.PERCUSSION_CHANNEL, part.role.getKey(), false);
+            } else {
+                if (channel == ScorePlayer.PERCUSSION_CHANNEL) channel++;
+                if (channel > 15) throw new IOException("too many pipe parts");
+                accompaniment[count++] = part.events.onChannel(channel++, -1, false);
+            }
+        }
+        MidiEvents events = lead.role.getKey() >= 0
+                ? lead.events.onChannel(ScorePlayer.PERCUSSION_CHANNEL, lead.role.getKey(), true)
+                : lead.events;
+        return new BandScore(lead, events, accompaniment);
+    }
+
+    /**
+     * @return Returns the leading part's tune, the one to show
+     */
+    public Tune getTune() {
+        return lead.tune;
+    }
+
+    /**
+     * @return Returns the leading part's file
+     */
+    public File getFile() {
+        return lead.file;
+    }
+
+    /**
+     * @param countIn number of beats clicked before the band starts
+     * @return Returns all parts ready to be played together
+     */
+    public PlaybackItem toPlaybackItem(int countIn) {
+        return new PlaybackItem(lead.tune, lead.file, events, accompaniment, countIn, false);
+    }
+}
@@ -0,0 +1,522 @@
+package bagpipeplayer;
+
+import abc.notation.BarLine;
+import abc.notation.EndOfStaffLine;
+import abc.notation.KeySignature;
+import abc.notation.MeasureRepeat;
+import abc.notation.Note;
+import abc.notation.NotesSeparator;
+import abc.notation.RepeatEnd;
+import abc.notation.TimeSignature;
+import abc.notation.Tune;
+import abc.notation.TuneInfos;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Converts BWW (and BMW) files to abc4j tunes.
+ * <p>
+ * A converter has no state of its own and can be shared by any number of
+ * threads. The symbol patterns and tables are compiled once for all
+ * converters; the matchers, the charset decoder and the read buffers are
+ * kept per thread and reused by every conversion on that thread. A
+ * conversion still allocates its own state, the symbols and header strings
+ * it reads and the tune it returns.
+ * <p>
+ * Malformed input never fails a conversion: anything that can't be
+ * understood is skipped and recorded as a {@link BwwDiagnostic}, so that a
+ * tune is always returned even for damaged files.
+ */
+public final class BwwConverter {
+
+    /**
+     * The outcome of a conversion.
+     */
+    public static final class Result {
+        private final Tune tune;
+        private final List<BwwDiagnostic> diagnostics;
+        private final String music;
+
+        private Result(Tune tune, List<BwwDiagnostic> diagnostics, String music) {
+            this.tune = tune;
+            this.diagnostics = Collections.unmodifiableList(diagnostics);
+            this.music = music;
+        }
+
+        /**
+         * @return Returns the converted tune
+         */
+        public Tune getTune() {
+            return tune;
+        }
+
+        /**
+         * @return Returns everything that went wrong while parsing, in order of
+         *         appearance. Empty if the file was converted cleanly.
+         */
+        public List<BwwDiagnostic> getDiagnostics() {
+            return diagnostics;
+        }
+
+        /**
+         * @return Returns the musical information of the BWW file with the
+         *         superfluous whitespace removed
+         */
+        public String getBwwMusicAsString() {
+            return music;
+        }
+    }
+
+    private static final Pattern SPACES = Pattern.compile("\\s+");
+    private static final Pattern NOTE = Pattern.compile("(LG|LA|B|C|D|E|F|HG|HA)(r|l)?_(\\d{1,2})"); // Matches any BWW note
+    private static final Pattern REST = Pattern.compile("REST_(\\d{1,2})");
+    private static final Pattern DOT = Pattern.compile("''?(lg|la|b|c|d|e|f|hg|ha)");
+    private static final Pattern TIME_SIGNATURE = Pattern.compile("\\d{1,2}_\\d{1,2}|C_?");
+    /**
+     * Gracenotes and embellishments by the prefix of their BWW symbols:
+     * single gracenotes (gg, tg...), doublings, strikes, grips, taorluaths,
+     * crunluaths, throws on D, peles, birls and the cadences of the light
+     * music (edre, dare, embari...)
+     */
+    private static final String EMBELLISHMENTS = "[abcdefgt]g|[th]?dbl?[a-z]*|(str|[lt]?[gth]st)[a-z]*"
+            + "|[ght]?grp[a-z]*|[ght]?tar[a-z]*|bubly|[ght]?crl[a-z]*|h?v?thr[a-z]*|[lth]?pel[a-z]*"
+            + "|[agt]?brl|abr|gbr|tbr|birl|(ch)?e?dare|[ce]?h?edre|e?dre|[eh]?embari|[eh]?endari|chelari|hiharin";
+    private static final Pattern IGNORED = Pattern.compile("\\^.*|(sharp|flat|natural)[a-z]+|I!|!I|!!|'\\d+|'intro|_'|fermat[a-z]+|"
+            + EMBELLISHMENTS);
+    /**
+     * Header strings without a type letter, in the order BWW writes them
+     */
+    private static final char[] HEADER_ORDER = {'T', 'Y', 'M', 'F'};
+    private static final Map<String, Byte> NOTE_HEIGHTS = new HashMap<String, Byte>();
+    static {
+        NOTE_HEIGHTS.put("LG", Note.G);
+        NOTE_HEIGHTS.put("LA", Note.A);
+        NOTE_HEIGHTS.put("B", Note.B);
+        NOTE_HEIGHTS.put("C", Note.c);
+        NOTE_HEIGHTS.put("D", Note.d);
+        NOTE_HEIGHTS.put("E", Note.e);
+        NOTE_HEIGHTS.put("F", Note.f);
+        NOTE_HEIGHTS.put("HG", Note.g);
+        NOTE_HEIGHTS.put("HA", Note.a);
+    }
+    static final String VOICE = "Bagpipe";
+    /**
+     * Size of the per thread read buffers; files are usually a few KB
+     */
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    private final Charset charset;
+    private final ThreadLocal<Scratch> scratch = new ThreadLocal<Scratch>() {
+        @Override
+        protected Scratch initialValue() {
+            return new Scratch(charset);
+        }
+    };
+
+    /**
+     * Creates a converter reading files in the platform's default charset,
+     * as the BWW programs write them.
+     */
+    public BwwConverter() {
+        this(Charset.defaultCharset());
+    }
+
+    /**
+     * @param charset charset of the files converted
+     */
+    public BwwConverter(Charset charset) {
+        this.charset = charset;
+    }
+
+    /**
+     * Converts a BWW file.
+     * @param file the file
+     * @return Returns the tune and what went wrong converting it
+     * @throws IOException if the file can't be read
+     */
+    public Result convert(File file) throws IOException {
+        FileInputStream stream = new FileInputStream(file);
+        try {
+            return convert(stream.getChannel());
+        } finally {
+            stream.close();
+        }
+    }
+
+    /**
+     * Converts BWW text read from a channel, up to its end. The channel isn't closed.
+     * @param channel the channel
+     * @return Returns the tune and what went wrong converting it
+     * @throws IOException if the channel can't be read
+     */
+    public Result convert(ReadableByteChannel channel) throws IOException {
+        Scratch s = scratch.get();
+        return convert(s.read(channel), s);
+    }
+
+    /**
+     * Converts BWW text already in memory, including line breaks and whatnot.
+     * @param text the whole BWW file
+     * @return Returns the tune and what went wrong converting it
+     */
+    public Result convert(CharSequence text) {
+        return convert(text, scratch.get());
+    }
+
+    private Result convert(CharSequence text, Scratch s) {
+        Conversion c = new Conversion(s);
+        c.parse(text);
+        return new Result(c.tune, c.diagnostics, c.music.toString().trim());
+    }
+
+    /**
+     * Buffers and matchers reused by all conversions on one thread.
+     */
+    private static final class Scratch {
+        final Matcher note = NOTE.matcher("");
+        final Matcher rest = REST.matcher("");
+        final Matcher dot = DOT.matcher("");
+        final Matcher timeSignature = TIME_SIGNATURE.matcher("");
+        final Matcher ignored = IGNORED.matcher("");
+        final Matcher spaces = SPACES.matcher("");
+        final CharsetDecoder decoder;
+        ByteBuffer bytes = ByteBuffer.allocate(BUFFER_SIZE);
+        CharBuffer chars = CharBuffer.allocate(BUFFER_SIZE);
+
+        Scratch(Charset charset) {
+            decoder = charset.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        }
+
+        /**
+         * Decodes everything left in the channel into the char buffer.
+         * @return Returns the chars, valid until the next read on this thread
+         */
+        CharBuffer read(ReadableByteChannel channel) throws IOException {
+            decoder.reset();
+            bytes.clear();
+            chars.clear();
+            boolean end = false;
+            while (true) {
+                if (!end && channel.read(bytes) < 0) end = true;
+                bytes.flip();
+                CoderResult result = decoder.decode(bytes, chars, end);
+                bytes.compact();
+                if (result.isOverflow()) {
+                    growChars();
+                } else if (end) {
+                    break;
+                }
+            }
+            while (decoder.flush(chars).isOverflow()) growChars();
+            chars.flip();
+            return chars;
+        }
+
+        private void growChars() {
+            CharBuffer bigger = CharBuffer.allocate(chars.capacity() * 2);
+            chars.flip();
+            bigger.put(chars);
+            chars = bigger;
+        }
+    }
+
+    /**
+     * The state of one conversion.
+     */
+    private static final class Conversion {
+        final Scratch s;
+        final Tune tune = new Tune();
+        final List<BwwDiagnostic> diagnostics = new ArrayList<BwwDiagnostic>();
+        final StringBuilder music = new StringBuilder();
+        boolean metronomSet;
+        Note lastNote;
+
+        Conversion(Scratch s) {
+            this.s = s;
+        }
+
+        void parse(CharSequence text) {
+            int headerStrings = 0;
+            boolean musicStarted = false;
+            int lineNumber = 0;
+
+            /*
+             * Walk the text line by line. Empty lines are counted too so
+             * diagnostics can point at the right line number.
+             */
+            int lineStart = 0;
+            while (lineStart < text.length() || lineNumber == 0) {
+                int lineEnd = lineStart;
+                while (lineEnd < text.length() && text.charAt(lineEnd) != '\n') lineEnd++;
+                int next = lineEnd + 1;
+                if (lineEnd > lineStart && text.charAt(lineEnd - 1) == '\r') lineEnd--;
+                String line = text.subSequence(lineStart, lineEnd).toString();
+                lineStart = next;
+                lineNumber++;
+
+                int start = skipWhitespace(line, 0);
+                if (start == line.length()) continue;
+
+                /*
+                 * Title, rhythm, composer and history are quoted strings followed by
+                 * their formatting information, e.g. "Scotland the Brave",(T,L,0,0,...).
+                 * The letter after the quote says what the string is; very old files
+                 * leave it out, so fall back to the usual order in that case.
+                 */
+                if (line.charAt(start) == '"') {
+                    addHeaderString(line, lineNumber, start, headerStrings++);
+                    continue;
+                }
+
+                /*
+                 * Everything before the first clef (&) is formatting information
+                 * (fonts, MIDI mappings, gracenote durations...) which we don't need.
+                 */
+                if (line.charAt(start) == '&') {
+                    if (!musicStarted) {
+                        /*
+                         * Always append 'K:' at the and of the head before music. Why? Dunno!
+                         */
+                        tune.getMusic().addElement(VOICE, new KeySignature(Note.A, KeySignature.MIXOLYDIAN));
+                        musicStarted = true;
+                    }
+                    start++;
+                } else if (!musicStarted) {
+                    continue;
+                }
+
+                addToMusic(line.substring(start));
+
+                /*
+                 * Cut the line into whitespace separated symbols, keeping track of
+                 * the column each one starts at.
+                 */
+                int pos = skipWhitespace(line, start);
+                while (pos < line.length()) {
+                    int end = pos;
+                    while (end < line.length() && !Character.isWhitespace(line.charAt(end))) end++;
+                    addSymbol(line.substring(pos, end), lineNumber, pos + 1);
+                    pos = skipWhitespace(line, end);
+                }
+            }
+
+            if (tune.getTuneInfos().get(TuneInfos.TITLE) == null) {
+                diagnostics.add(new BwwDiagnostic(1, 1, "no title found"));
+            }
+            if (!musicStarted) {
+                diagnostics.add(new BwwDiagnostic(lineNumber, 1, "no music found (missing '&' clef)"));
+            }
+        }
+
+        /**
+         * Adds a quoted header string to the tune.
+         * @param line the line containing the string
+         * @param lineNumber 1-based number of the line
+         * @param start index of the opening quote
+         * @param index how many header strings came before this one
+         */
+        private void addHeaderString(String line, int lineNumber, int start, int index) {
+            int close = line.indexOf('"', start + 1);
+            if (close < 0) {
+                diagnostics.add(new BwwDiagnostic(lineNumber, start + 1, "unterminated string"));
+                close = line.length();
+            }
+            String text = line.substring(start + 1, close);
+
+            /*
+             * Look for the type letter in ,(T,... after the closing quote.
+             */
+            char type = 0;
+            int paren = line.indexOf('(', close);
+            if (paren >= 0 && paren + 1 < line.length()) type = line.charAt(paren + 1);
+            if (type != 'T' && type != 'Y' && type != 'M' && type != 'F') {
+                type = index < HEADER_ORDER.length ? HEADER_ORDER[index] : 0;
+            }
+
+            switch (type) {
+                case 'T': tune.addTitle(text); break;
+                // the rythm (reel, jig etc.)
+                case 'Y': tune.setRhythm(text); break;
+                case 'M': tune.addComposer(text); break;
+                // BagpipePlayer takes information like "arr. by yadda yadda" as history information.
+                case 'F': tune.addHistory(text); break;
+                default:
+                    diagnostics.add(new BwwDiagnostic(lineNumber, start + 1, "unknown text \"" + text + "\" ignored"));
+            }
+        }
+
+        /**
+         * Adds the symbols of a line to the music text, stripped of all
+         * superfluous whitespace before, after and between them.
+         */
+        private void addToMusic(String symbols) {
+            String clean = s.spaces.reset(symbols.trim()).replaceAll(" ");
+            if (clean.length() > 0) music.append(clean).append("  ");
+        }
+
+        /**
+         * Sets the metronom once (ger. "Takt")
+         * @param m String containing the measure (e.g. 4_4, 6_8 or C for Common Time)
+         * @param line 1-based line of the measure
+         * @param column 1-based column of the measure
+         */
+        private void setMetronom(String m, int line, int column) {
+            if (metronomSet) return;
+            TimeSignature signature;
+            if (m.equals("C")) {
+                signature = TimeSignature.SIGNATURE_4_4;
+            } else if (m.equals("C_")) {
+                signature = TimeSignature.SIGNATURE_2_2;
+            } else {
+                int underscore = m.indexOf('_');
+                int numerator = Integer.parseInt(m.substring(0, underscore));
+                int denominator = Integer.parseInt(m.substring(underscore + 1));
+                if (numerator == 0 || denominator == 0) {
+                    diagnostics.add(new BwwDiagnostic(line, column, "invalid time signature \"" + m + "\" skipped"));
+                    return;
+                }
+                signature = new TimeSignature(numerator, denominator);
+            }
+            tune.getMusic().addElement(VOICE, signature);
+            metronomSet = true;
+        }
+
+        /**
+         * Replaces a BWW symbol with a ABC symbol and adds it to the tune.
+         * Unknown or misplaced symbols are skipped and reported as diagnostics.
+         * @param symbol the BWW symbol
+         * @param line 1-based line of the symbol
+         * @param column 1-based column of the symbol
+         */
+        private void addSymbol(String symbol, int line, int column) {
+            Matcher m = s.note.reset(symbol);
+            // If this is a note
+            if (m.matches()) {
+                Note n = new Note(NOTE_HEIGHTS.get(m.group(1)).byteValue());
+
+                /*
+                 * Get the duration of the note
+                 */
+                short noteDuration = durationOf(m.group(3));
+                if (noteDuration == 0) {
+                    diagnostics.add(new BwwDiagnostic(line, column, "unknown note length in \"" + symbol + "\", using a quarter"));
+                    noteDuration = Note.QUARTER;
+                }
+                n.setStrictDuration(noteDuration);
+
+                tune.getMusic().addElement(VOICE, n);
+                lastNote = n;
+
+                /*
+                 * See of l or r was in the note's string and add a note seperator if not
+                 */
+                if (m.group(2) == null) {
+                    tune.getMusic().addElement(VOICE, new NotesSeparator());
+                }
+                return;
+            }
+
+            m = s.rest.reset(symbol);
+            if (m.matches()) {
+                short restDuration = durationOf(m.group(1));
+                if (restDuration == 0) {
+                    diagnostics.add(new BwwDiagnostic(line, column, "unknown rest length in \"" + symbol + "\", using a quarter"));
+                    restDuration = Note.QUARTER;
+                }
+                Note rest = new Note(Note.REST);
+                rest.setStrictDuration(restDuration);
+                tune.getMusic().addElement(VOICE, rest);
+                lastNote = rest;
+                return;
+            }
+
+            if (s.dot.reset(symbol).matches()) {
+                /*
+                 * If it is a dot for the last note add one or two dots to it.
+                 */
+                if (lastNote == null) {
+                    diagnostics.add(new BwwDiagnostic(line, column, "dot \"" + symbol + "\" without a preceding note"));
+                } else {
+                    lastNote.setDotted(symbol.charAt(1) == '\'' ? (byte) 2 : (byte) 1);
+                }
+                return;
+            }
+
+            if (s.timeSignature.reset(symbol).matches()) {
+                setMetronom(symbol, line, column);
+                return;
+            }
+
+            /*
+             * RAW CONVERSIONS
+             */
+
+            // repeated part
+            if (symbol.equals("I!''")) { tune.getMusic().addElement(VOICE, new MeasureRepeat(1)); return; }
+            // end of repeated part
+            if (symbol.equals("''!I")) { tune.getMusic().addElement(VOICE, new RepeatEnd()); return; }
+            // bar line
+            if (symbol.equals("!")) { tune.getMusic().addElement(VOICE, new BarLine()); return; }
+            // end of line
+            if (symbol.equals("!t")) { tune.getMusic().addElement(VOICE, new EndOfStaffLine()); return; }
+
+            /*
+             * Groups, ties, key signature sharps, gracenotes and embellishments and the
+             * remaining part markers are understood but not converted (yet), so they
+             * are skipped silently.
+             * 1) It could be a triplet in the "old format" (according to the Bagpipe Player documentation)
+             *    which comes after the three notes it stands for containing
+             *    the highest note it has to go over (e.g. ^3hg means "the last 3 notes were a triplet with
+             *    an High G at its peak").
+             * 2) It could be a "new format" group which starts with ^3s and ends with ^3e. Thpse two symbols
+             *    enclose their notes which they stand for, e.g. ^3s LA_8 LA_8 LA_8 ^3e.
+             * 3) It could be a tie which is in between two tied notes. E.g. LG_2 ^tlg LG_2.
+             */
+            if (s.ignored.reset(symbol).matches()) return;
+
+            diagnostics.add(new BwwDiagnostic(line, column, "unsupported symbol \"" + symbol + "\" skipped"));
+        }
+    }
+
+    /**
+     * @return Returns the index of the first non whitespace character in s at or after from
+     */
+    private static int skipWhitespace(String s, int from) {
+        while (from < s.length() && Character.isWhitespace(s.charAt(from))) from++;
+        return from;
+    }
+
+    /**
+     * @param length BWW note length (1, 2, 4 ... 32)
+     * @return Returns the strict abc4j duration or 0 if there is none
+     */
+    private static short durationOf(String length) {
+        switch (Integer.parseInt(length)) {
+            case 1: return Note.WHOLE;
+            case 2: return Note.HALF;
+            case 4: return Note.QUARTER;
+            case 8: return Note.EIGHTH;
+            case 16: return Note.SIXTEENTH;
+            case 32: return Note.THIRTY_SECOND;
+            case 64: return Note.SIXTY_FOURTH;
+            default: return 0;
+        }
+    }
+}
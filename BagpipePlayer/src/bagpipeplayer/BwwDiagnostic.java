@@ -0,0 +1,50 @@
+package bagpipeplayer;
+
+/**
+ * A problem found while converting a BWW file, positioned at the line and
+ * column of the offending symbol. The converter never throws for malformed
+ * input, it records one of these and carries on with the next symbol.
+ */
+public class BwwDiagnostic {
+
+    private final int line;
+    private final int column;
+    private final String message;
+
+    /**
+     * @param line 1-based line number in the BWW source
+     * @param column 1-based column of the first character of the symbol
+     * @param message what went wrong
+     */
+    public BwwDiagnostic(int line, int column, String message) {
+        this.line = line;
+        this.column = column;
+        this.message = message;
+    }
+
+    /**
+     * @return Returns the 1-based line number
+     */
+    public int getLine() {
+        return line;
+    }
+
+    /**
+     * @return Returns the 1-based column
+     */
+    public int getColumn() {
+        return column;
+    }
+
+    /**
+     * @return Returns the description of the problem
+     */
+    public String getMessage() {
+        return message;
+    }
+
+    @Override
+    public String toString() {
+        return line + ":" + column + ": " + message;
+    }
+}
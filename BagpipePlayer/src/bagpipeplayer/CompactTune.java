@@ -0,0 +1,410 @@
+package bagpipeplayer;
+
+import abc.notation.Accidental;
+import abc.notation.BarLine;
+import abc.notation.DecorableElement;
+import abc.notation.EndOfStaffLine;
+import abc.notation.KeySignature;
+import abc.notation.MeasureRepeat;
+import abc.notation.Music;
+import abc.notation.Note;
+import abc.notation.NoteAbstract;
+import abc.notation.NotesSeparator;
+import abc.notation.RepeatEnd;
+import abc.notation.TimeSignature;
+import abc.notation.Tune;
+import abc.notation.TuneInfos;
+import abc.notation.Voice;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A tune in a few bytes per note, for keeping tunes in memory which aren't
+ * shown, e.g. those of the tabs in the background (see {@link TuneDocument}).
+ * <p>
+ * An abc4j tune is a graph of objects: a Note (with its decoration, slur
+ * and tie fields) per note and, for BWW files, a NotesSeparator after
+ * nearly every note. Here every element of the voice takes four bytes in
+ * four parallel arrays instead: its kind, its pitch, its duration and its
+ * flags (dots, beamed to the next note, gracenote, accidental). Note
+ * separators are folded into the beam flag of the note before them and
+ * gracenotes are stored as flagged notes in front of their main note.
+ * <p>
+ * The abc4j tune is only built again when it is needed for display or
+ * playback, by {@link #toTune()}, and not kept, so the compact tune
+ * never takes more than {@link #sizeInBytes()}. Anything that can't be
+ * stored this way (chords, tuplets, ties, slurs, decorations, several
+ * voices...) is left out and {@link #isExact()} is false; the
+ * {@link TuneDocument} then keeps the full tune, or loads it again from its
+ * file, instead. BWW tunes always are exact.
+ */
+public final class CompactTune {
+
+    /** Element kinds */
+    public static final byte NOTE = 0, REST = 1, BAR = 2, REPEAT_START = 3, REPEAT_END = 4,
+            END_OF_LINE = 5, TIME_SIGNATURE = 6, KEY_SIGNATURE = 7, SEPARATOR = 8;
+
+    /** Flags: number of dots (two bits), beamed to the next note, gracenote of the next note */
+    private static final int DOTS = 0x03, BEAMED = 0x04, GRACENOTE = 0x08;
+    /** Flags: accidental of a note or key, index into {@link #ACCIDENTALS} */
+    private static final int ACCIDENTAL_SHIFT = 4;
+
+    private static final short[] DURATIONS = {
+        Note.WHOLE, Note.HALF, Note.QUARTER, Note.EIGHTH, Note.SIXTEENTH, Note.THIRTY_SECOND, Note.SIXTY_FOURTH
+    };
+    private static final Accidental[] ACCIDENTALS = {
+        Accidental.NONE, Accidental.NATURAL, Accidental.SHARP, Accidental.FLAT,
+        Accidental.DOUBLE_SHARP, Accidental.DOUBLE_FLAT
+    };
+    private static final byte[] INFOS = {
+        TuneInfos.TITLE, TuneInfos.RHYTHM, TuneInfos.COMPOSER, TuneInfos.HISTORY, TuneInfos.AREA,
+        TuneInfos.BOOK, TuneInfos.DISCOGRAPHY, TuneInfos.FILEURL, TuneInfos.GROUP, TuneInfos.INFORMATIONS,
+        TuneInfos.LYRICIST, TuneInfos.NOTES, TuneInfos.ORIGIN, TuneInfos.SOURCE, TuneInfos.TRANSCRIPTION,
+        TuneInfos.WORDS
+    };
+    private static final byte DEFAULT_GRACING = new Note(Note.C).getGracingType();
+
+    private final String voice;
+    /**
+     * Header fields present, and their values
+     */
+    private final byte[] infoTypes;
+    private final String[][] infoValues;
+    private final boolean exact;
+    /**
+     * The elements: kind, pitch (note height, bar type, key tonic, time
+     * numerator or repeated measures), duration (index into DURATIONS, key
+     * mode or time denominator) and flags
+     */
+    private final byte[] kinds;
+    private final byte[] pitches;
+    private final byte[] durations;
+    private final byte[] flags;
+
+    private CompactTune(String voice, byte[] infoTypes, String[][] infoValues, boolean exact,
+            byte[] kinds, byte[] pitches, byte[] durations, byte[] flags) {
+        this.voice = voice;
+        this.infoTypes = infoTypes;
+        this.infoValues = infoValues;
+        this.exact = exact;
+        this.kinds = kinds;
+        this.pitches = pitches;
+        this.durations = durations;
+        this.flags = flags;
+    }
+
+    /**
+     * Stores the first voice of a tune compactly.
+     * @param tune the tune
+     * @return Returns the compact tune, which doesn't refer to the tune
+     */
+    public static CompactTune of(Tune tune) {
+        Builder b = new Builder();
+        Music music = tune.getMusic();
+        if (music.getVoices().size() > 1 || tune.getMultiPartsDefinition() != null
+                || tune.getGeneralTempo() != null) {
+            b.exact = false;
+        }
+        Voice v = music.getFirstVoice();
+        for (int i = 0; v != null && i < v.size(); i++) {
+            b.add(v.elementAt(i));
+        }
+
+        TuneInfos infos = tune.getTuneInfos();
+        byte[] types = new byte[INFOS.length];
+        String[][] values = new String[INFOS.length][];
+        int count = 0;
+        for (byte type : INFOS) {
+            if (infos.has(type)) {
+                types[count] = type;
+                values[count++] = infos.getAsStringArray(type);
+            }
+        }
+        return new CompactTune(v == null ? BwwConverter.VOICE : v.getVoiceName(),
+                Arrays.copyOf(types, count), Arrays.copyOf(values, count), b.exact,
+                Arrays.copyOf(b.kinds, b.size), Arrays.copyOf(b.pitches, b.size),
+                Arrays.copyOf(b.durations, b.size), Arrays.copyOf(b.flags, b.size));
+    }
+
+    /**
+     * Collects the elements of a voice.
+     */
+    private static final class Builder {
+        byte[] kinds = new byte[256];
+        byte[] pitches = new byte[256];
+        byte[] durations = new byte[256];
+        byte[] flags = new byte[256];
+        int size;
+        boolean exact = true;
+
+        void add(Object element) {
+            if (element instanceof DecorableElement && !plain((DecorableElement) element)) exact = false;
+            if (element.getClass() == Note.class) {
+                Note note = (Note) element;
+                if (note.hasGracingNotes()) {
+                    if (note.getGracingType() != DEFAULT_GRACING) exact = false;
+                    for (NoteAbstract grace : note.getGracingNotes()) {
+                        if (grace.getClass() == Note.class && plain(grace)) {
+                            addNote((Note) grace, GRACENOTE);
+                        } else {
+                            exact = false;
+                        }
+                    }
+                }
+                addNote(note, BEAMED);
+            } else if (element instanceof NotesSeparator) {
+                if (size > 0 && (kinds[size - 1] == NOTE || kinds[size - 1] == REST)
+                        && (flags[size - 1] & BEAMED) != 0) {
+                    flags[size - 1] &= ~BEAMED;
+                } else {
+                    append(SEPARATOR, 0, 0, 0);
+                }
+            } else if (element.getClass() == BarLine.class) {
+                append(BAR, ((BarLine) element).getType(), 0, 0);
+            } else if (element.getClass() == MeasureRepeat.class) {
+                append(REPEAT_START, ((MeasureRepeat) element).getNumberOfMeasure(), 0, 0);
+            } else if (element.getClass() == RepeatEnd.class) {
+                append(REPEAT_END, 0, 0, 0);
+            } else if (element.getClass() == EndOfStaffLine.class) {
+                append(END_OF_LINE, 0, 0, 0);
+            } else if (element.getClass() == TimeSignature.class) {
+                TimeSignature t = (TimeSignature) element;
+                if (t.isNone()) {
+                    append(TIME_SIGNATURE, 0, 0, 0);
+                } else {
+                    if (t.isSumOfNumerators() || t.getNumerator() > Byte.MAX_VALUE
+                            || t.getDenominator() > Byte.MAX_VALUE) {
+                        exact = false;
+                    }
+                    append(TIME_SIGNATURE, t.getNumerator(), t.getDenominator(), 0);
+                }
+            } else if (element.getClass() == KeySignature.class) {
+                KeySignature k = (KeySignature) element;
+                int accidental = accidental(k.getAccidental());
+                KeySignature rebuilt = new KeySignature(k.getNote(), ACCIDENTALS[accidental], k.getMode());
+                if (!same(k.getAccidental(), rebuilt.getAccidental())
+                        || !same(k.getAccidentals(), rebuilt.getAccidentals())) {
+                    exact = false;
+                }
+                append(KEY_SIGNATURE, k.getNote(), k.getMode(), accidental << ACCIDENTAL_SHIFT);
+            } else {
+                exact = false;
+            }
+        }
+
+        private void addNote(Note note, int flag) {
+            int duration = 0;
+            while (duration < DURATIONS.length && DURATIONS[duration] != note.getStrictDuration()) duration++;
+            if (duration == DURATIONS.length) {
+                exact = false;
+                duration = 2;
+            }
+            if (note.countDots() > DOTS) exact = false;
+            int accidental = accidental(note.getAccidental());
+            // what toTune() gives the note back
+            if (!same(note.getAccidental(), ACCIDENTALS[accidental])) exact = false;
+            int f = flag | Math.min(DOTS, note.countDots()) | accidental << ACCIDENTAL_SHIFT;
+            if (note.isRest()) {
+                append(REST, 0, duration, f);
+            } else {
+                append(NOTE, note.getHeight(), duration, f);
+            }
+        }
+
+        private int accidental(Accidental accidental) {
+            for (int i = 0; i < ACCIDENTALS.length; i++) {
+                if (same(ACCIDENTALS[i], accidental)) return i;
+            }
+            exact = false;
+            return 0;
+        }
+
+        /**
+         * Accidental.equals only compares the values, which are the same
+         * (0) for no accidental and a natural.
+         */
+        private static boolean same(Accidental a, Accidental b) {
+            if (a == b) return true;
+            if (a == null || b == null) return false;
+            return a.getValue() == b.getValue() && a.isNatural() == b.isNatural()
+                    && a.isDefined() == b.isDefined();
+        }
+
+        private static boolean same(Accidental[] a, Accidental[] b) {
+            if (a == null || b == null) return a == b;
+            if (a.length != b.length) return false;
+            for (int i = 0; i < a.length; i++) {
+                if (!same(a[i], b[i])) return false;
+            }
+            return true;
+        }
+
+        private boolean plain(DecorableElement e) {
+            if (e.hasDecorations() || e.hasAnnotations() || e.hasDynamic()
+                    || e.getChord() != null || e.getChordName() != null) {
+                return false;
+            }
+            if (e instanceof NoteAbstract) {
+                NoteAbstract n = (NoteAbstract) e;
+                return !n.isPartOfTuplet() && !n.isPartOfSlur() && !n.isTied()
+                        && !n.hasStaccato() && !n.hasGeneralGracing();
+            }
+            return true;
+        }
+
+        private void append(byte kind, int pitch, int duration, int flag) {
+            if (size == kinds.length) {
+                kinds = Arrays.copyOf(kinds, size * 2);
+                pitches = Arrays.copyOf(pitches, size * 2);
+                durations = Arrays.copyOf(durations, size * 2);
+                flags = Arrays.copyOf(flags, size * 2);
+            }
+            kinds[size] = kind;
+            pitches[size] = (byte) pitch;
+            durations[size] = (byte) duration;
+            flags[size++] = (byte) flag;
+        }
+    }
+
+    /**
+     * Builds the abc4j tune, a new one on every call. May be called from
+     * any thread.
+     * @return Returns the tune
+     */
+    public Tune toTune() {
+        Tune t = new Tune();
+        for (int i = 0; i < infoTypes.length; i++) {
+            if (infoTypes[i] == TuneInfos.TITLE) {
+                for (String title : infoValues[i]) t.addTitle(title);
+            } else {
+                t.getTuneInfos().set(infoTypes[i], infoValues[i]);
+            }
+        }
+        Music music = t.getMusic();
+        List<Note> graces = new ArrayList<Note>();
+        for (int i = 0; i < kinds.length; i++) {
+            switch (kinds[i]) {
+                case NOTE:
+                case REST:
+                    Note note = new Note(kinds[i] == REST ? Note.REST : pitches[i],
+                            ACCIDENTALS[(flags[i] & 0xFF) >> ACCIDENTAL_SHIFT]);
+                    note.setStrictDuration(DURATIONS[durations[i]]);
+                    if ((flags[i] & DOTS) != 0) note.setDotted((byte) (flags[i] & DOTS));
+                    if ((flags[i] & GRACENOTE) != 0) {
+                        graces.add(note);
+                        continue;
+                    }
+                    if (!graces.isEmpty()) {
+                        note.setGracingNotes(graces);
+                        graces = new ArrayList<Note>();
+                    }
+                    music.addElement(voice, note);
+                    if ((flags[i] & BEAMED) == 0) music.addElement(voice, new NotesSeparator());
+                    break;
+                case BAR:
+                    music.addElement(voice, new BarLine(pitches[i]));
+                    break;
+                case REPEAT_START:
+                    music.addElement(voice, new MeasureRepeat(pitches[i]));
+                    break;
+                case REPEAT_END:
+                    music.addElement(voice, new RepeatEnd());
+                    break;
+                case END_OF_LINE:
+                    music.addElement(voice, new EndOfStaffLine());
+                    break;
+                case TIME_SIGNATURE:
+                    music.addElement(voice, pitches[i] == 0 ? TimeSignature.SIGNATURE_NONE
+                            : new TimeSignature(pitches[i], durations[i]));
+                    break;
+                case KEY_SIGNATURE:
+                    music.addElement(voice, new KeySignature(pitches[i],
+                            ACCIDENTALS[(flags[i] & 0xFF) >> ACCIDENTAL_SHIFT], durations[i]));
+                    break;
+                case SEPARATOR:
+                    music.addElement(voice, new NotesSeparator());
+                    break;
+            }
+        }
+        return t;
+    }
+
+    /**
+     * @return Returns true if the tune built by {@link #toTune()} is the same
+     * as the one this was made of
+     */
+    public boolean isExact() {
+        return exact;
+    }
+
+    /**
+     * @return Returns the first title or null if the tune has none
+     */
+    public String getTitle() {
+        for (int i = 0; i < infoTypes.length; i++) {
+            if (infoTypes[i] == TuneInfos.TITLE && infoValues[i].length > 0) return infoValues[i][0];
+        }
+        return null;
+    }
+
+    /**
+     * @return Returns the number of elements, gracenotes included
+     */
+    public int size() {
+        return kinds.length;
+    }
+
+    /**
+     * @return Returns the kind of an element, e.g. {@link #NOTE}
+     */
+    public byte kind(int i) {
+        return kinds[i];
+    }
+
+    /**
+     * @return Returns the height of a note (as in abc4j, middle C is 0)
+     */
+    public byte height(int i) {
+        return pitches[i];
+    }
+
+    /**
+     * @return Returns the strict (undotted) duration of a note or rest, e.g. {@link Note#QUARTER}
+     */
+    public short duration(int i) {
+        return DURATIONS[durations[i]];
+    }
+
+    /**
+     * @return Returns the number of dots of a note or rest
+     */
+    public int dots(int i) {
+        return flags[i] & DOTS;
+    }
+
+    /**
+     * @return Returns true if a note is beamed to the next one
+     */
+    public boolean isBeamed(int i) {
+        return (flags[i] & BEAMED) != 0;
+    }
+
+    /**
+     * @return Returns true if a note is a gracenote of the next main note
+     */
+    public boolean isGracenote(int i) {
+        return (flags[i] & GRACENOTE) != 0;
+    }
+
+    /**
+     * @return Returns the estimated heap size (bytes)
+     */
+    public long sizeInBytes() {
+        long size = 96 + 4 * (16 + kinds.length);
+        for (String[] values : infoValues) {
+            for (String value : values) size += 40 + 2 * value.length();
+        }
+        return size;
+    }
+}
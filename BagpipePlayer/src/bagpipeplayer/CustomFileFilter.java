@@ -9,8 +9,8 @@ import java.io.File;
 public class CustomFileFilter extends javax.swing.filechooser.FileFilter {
         @Override
         public boolean accept(File file) {
-            // Allow only directories, or files with ".txt" extension
-            return file.getAbsolutePath().endsWith(".abc") || file.getAbsolutePath().endsWith(".bww") || file.getAbsolutePath().endsWith(".bmw");
+            // Allow only directories, or files named like a known tune format
+            return file.isDirectory() || TuneLoader.hasKnownName(file);
         }
         @Override
         public String getDescription() {
@@ -0,0 +1,206 @@
+package bagpipeplayer;
+
+import abc.notation.Tune;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Finds copies of the same tune in a collection of files, no matter what
+ * they are called.
+ * <p>
+ * All files are loaded and fingerprinted in parallel, each exactly once.
+ * Tunes with the same content hash are exact copies. Near copies are found
+ * with locality sensitive hashing: the MinHash signature is cut into bands
+ * and a tune is only compared with the first tune it shares a band with,
+ * so the work grows with the number of files, not with the number of pairs.
+ */
+public class DuplicateFinder {
+
+    /**
+     * Signature entries per band. With 16 bands of 4, tunes 80 % alike share
+     * a band with a probability of over 99 %, tunes 30 % alike with about 12 %.
+     */
+    private static final int BAND_ROWS = 4;
+    private static final int BANDS = TuneFingerprint.SIGNATURE_LENGTH / BAND_ROWS;
+
+    /**
+     * Files holding the same tune.
+     */
+    public static class Cluster {
+        private final List<File> files = new ArrayList<File>();
+        private boolean exact = true;
+
+        /**
+         * @return Returns the files, in the order they were given
+         */
+        public List<File> getFiles() {
+            return files;
+        }
+
+        /**
+         * @return Returns true if all files have exactly the same notes
+         */
+        public boolean isExact() {
+            return exact;
+        }
+    }
+
+    private final ExecutorService pool;
+    private final double threshold;
+
+    /**
+     * @param threads number of files loaded at the same time
+     * @param threshold similarity (0..1) from which two tunes count as copies
+     */
+    public DuplicateFinder(int threads, double threshold) {
+        this.pool = Executors.newFixedThreadPool(threads);
+        this.threshold = threshold;
+    }
+
+    /**
+     * Groups the files holding the same or nearly the same tune. Files that
+     * can't be read are reported on System.err and skipped.
+     * @param files ABC or BWW files
+     * @return Returns the groups of two or more files
+     * @throws InterruptedException
+     */
+    public List<Cluster> findDuplicates(List<File> files) throws InterruptedException {
+        List<Future<TuneFingerprint>> results = new ArrayList<Future<TuneFingerprint>>(files.size());
+        for (final File file : files) {
+            results.add(pool.submit(new Callable<TuneFingerprint>() {
+                public TuneFingerprint call() throws IOException {
+                    Tune tune = TuneLoader.load(file);
+                    return TuneFingerprint.of(tune);
+                }
+            }));
+        }
+        TuneFingerprint[] prints = new TuneFingerprint[files.size()];
+        for (int i = 0; i < results.size(); i++) {
+            try {
+                prints[i] = results.get(i).get();
+            } catch (ExecutionException ex) {
+                System.err.println(files.get(i).getName() + ": " + ex.getCause().getLocalizedMessage());
+            }
+        }
+
+        int[] parent = new int[prints.length];
+        for (int i = 0; i < parent.length; i++) parent[i] = i;
+
+        // exact copies
+        Map<Long, Integer> byContent = new HashMap<Long, Integer>();
+        for (int i = 0; i < prints.length; i++) {
+            if (prints[i] == null) continue;
+            Integer first = byContent.get(prints[i].getContentHash());
+            if (first == null) {
+                byContent.put(prints[i].getContentHash(), i);
+            } else if (prints[first].sameContent(prints[i])) {
+                union(parent, first, i);
+            }
+        }
+
+        // near copies, compared only with the first tune in their bucket of each
+        // band, so a large group of copies costs one comparison per tune
+        for (int band = 0; band < BANDS; band++) {
+            Map<Long, Integer> buckets = new HashMap<Long, Integer>();
+            for (int i = 0; i < prints.length; i++) {
+                if (prints[i] == null || prints[i].getLength() == 0) continue;
+                long key = band;
+                for (int r = 0; r < BAND_ROWS; r++) {
+                    key = key * 31 + prints[i].signature(band * BAND_ROWS + r);
+                }
+                Integer first = buckets.get(key);
+                if (first == null) {
+                    buckets.put(key, i);
+                } else if (find(parent, i) != find(parent, first) && prints[i].similarity(prints[first]) >= threshold) {
+                    union(parent, i, first);
+                }
+            }
+        }
+
+        Map<Integer, Cluster> clusters = new HashMap<Integer, Cluster>();
+        List<Cluster> found = new ArrayList<Cluster>();
+        for (int i = 0; i < prints.length; i++) {
+            if (prints[i] == null) continue;
+            int root = find(parent, i);
+            Cluster c = clusters.get(root);
+            if (c == null) {
+                c = new Cluster();
+                clusters.put(root, c);
+            } else {
+                c.exact &= prints[i].sameContent(prints[root]);
+            }
+            c.files.add(files.get(i));
+            if (c.files.size() == 2) found.add(c);
+        }
+        return found;
+    }
+
+    /**
+     * Stops the worker threads.
+     */
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    private static int find(int[] parent, int i) {
+        while (parent[i] != i) {
+            parent[i] = parent[parent[i]];
+            i = parent[i];
+        }
+        return i;
+    }
+
+    private static void union(int[] parent, int a, int b) {
+        parent[find(parent, a)] = find(parent, b);
+    }
+
+    private static void collect(File file, List<File> files) {
+        if (file.isDirectory()) {
+            File[] children = file.listFiles();
+            if (children == null) return;
+            for (File child : children) collect(child, files);
+        } else if (TuneLoader.hasKnownName(file)) {
+            files.add(file);
+        }
+    }
+
+    /**
+     * Command line entry point:
+     * DuplicateFinder file|directory...
+     * Prints one line per group of copies. The similarity threshold (percent)
+     * can be set with -Dthreshold=..., it is 80 by default.
+     * @param args
+     * @throws InterruptedException
+     */
+    public static void main(String[] args) throws InterruptedException {
+        if (args.length < 1) {
+            System.err.println("usage: DuplicateFinder file|directory...");
+            System.exit(1);
+        }
+        List<File> files = new ArrayList<File>();
+        for (String arg : args) collect(new File(arg), files);
+
+        double threshold = Integer.getInteger("threshold", 80) / 100.0;
+        DuplicateFinder finder = new DuplicateFinder(Runtime.getRuntime().availableProcessors(), threshold);
+        try {
+            List<Cluster> clusters = finder.findDuplicates(files);
+            for (Cluster c : clusters) {
+                StringBuilder line = new StringBuilder(c.isExact() ? "same:" : "similar:");
+                for (File f : c.getFiles()) line.append(' ').append(f.getPath());
+                System.out.println(line);
+            }
+            System.out.println(clusters.size() + " groups of copies in " + files.size() + " files");
+        } finally {
+            finder.shutdown();
+        }
+    }
+}
@@ -0,0 +1,344 @@
+package bagpipeplayer;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.Receiver;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.Synthesizer;
+
+/**
+ * Plays {@link PlaybackItem}s back to back on its own thread.
+ * <p>
+ * Every event is sent a little ahead of time with the synthesizer timestamp
+ * it is due at, so the synthesizer places it on the exact sample and the
+ * scheduler thread's own jitter doesn't matter. The next item starts on the
+ * tick the current one ends (after its count-in), so there is no gap between
+ * tunes. A looping item is repeated the same way until something is queued
+ * after it or playback stops. At most two items are held: the one playing
+ * and the next one.
+ * <p>
+ * The parts of a band score are merged into one stream of events while
+ * playing (a k-way merge on the tick), so they share one clock and can't
+ * drift apart, and the merge costs nothing when there's just one part.
+ * <p>
+ * Synthesizers without a clock (microsecond position -1) get every event
+ * right when it is due instead, timed by {@link System#nanoTime()}.
+ */
+class EventScheduler implements Runnable {
+
+    /**
+     * How far ahead of time events are handed to the synthesizer (microseconds)
+     */
+    private static final long LOOKAHEAD = 50000;
+    /**
+     * Delay before the first event, gives the thread time to get going
+     */
+    private static final long START_DELAY = 100000;
+    /**
+     * Longest sleep, so tempo changes and stop requests are noticed quickly (milliseconds)
+     */
+    private static final long MAX_SLEEP = 10;
+    private static final int CLICK_CHANNEL = 9, CLICK_KEY = 37, CLICK_VELOCITY = 100;
+
+    /**
+     * Where the scheduler is, in the ticks of the item playing. Immutable,
+     * replaced whenever the tempo changes.
+     */
+    static class Position {
+        final PlaybackItem item;
+        final double anchorTick;
+        final long anchorTime;
+        final double microsPerTick;
+
+        Position(PlaybackItem item, double anchorTick, long anchorTime, double microsPerTick) {
+            this.item = item;
+            this.anchorTick = anchorTick;
+            this.anchorTime = anchorTime;
+            this.microsPerTick = microsPerTick;
+        }
+
+        long timeOf(double tick) {
+            return anchorTime + (long) ((tick - anchorTick) * microsPerTick);
+        }
+
+        double tickAt(long time) {
+            return anchorTick + (time - anchorTime) / microsPerTick;
+        }
+    }
+
+    /**
+     * Merges the events of several parts in tick order, a part's events on
+     * the same tick as another part's come after them if the part comes
+     * later. The parts are kept in a binary heap ordered by their next event.
+     */
+    static class Merge {
+        private final MidiEvents[] parts;
+        private final int[] next;
+        private final int[] heap;
+        private int size;
+
+        Merge(MidiEvents[] parts) {
+            this.parts = parts;
+            next = new int[parts.length];
+            heap = new int[parts.length];
+            for (int part = 0; part < parts.length; part++) {
+                if (parts[part].size() > 0) {
+                    heap[size] = part;
+                    up(size++);
+                }
+            }
+        }
+
+        boolean hasNext() {
+            return size > 0;
+        }
+
+        /**
+         * @return Returns the tick of the next event
+         */
+        long tick() {
+            return parts[heap[0]].tick(next[heap[0]]);
+        }
+
+        /**
+         * @return Returns the next event (see {@link MidiEvents#message(int)})
+         */
+        int message() {
+            return parts[heap[0]].message(next[heap[0]]);
+        }
+
+        /**
+         * Moves on to the event after the next one.
+         */
+        void advance() {
+            int part = heap[0];
+            if (++next[part] == parts[part].size()) {
+                heap[0] = heap[--size];
+            }
+            down(0);
+        }
+
+        private boolean before(int a, int b) {
+            long tickA = parts[a].tick(next[a]);
+            long tickB = parts[b].tick(next[b]);
+            return tickA < tickB || tickA == tickB && a < b;
+        }
+
+        private void up(int i) {
+            while (i > 0) {
+                int parent = (i - 1) / 2;
+                if (!before(heap[i], heap[parent])) return;
+                swap(i, parent);
+                i = parent;
+            }
+        }
+
+        private void down(int i) {
+            while (true) {
+                int first = i, child = 2 * i + 1;
+                if (child < size && before(heap[child], heap[first])) first = child;
+                if (child + 1 < size && before(heap[child + 1], heap[first])) first = child + 1;
+                if (first == i) return;
+                swap(i, first);
+                i = first;
+            }
+        }
+
+        private void swap(int i, int j) {
+            int part = heap[i];
+            heap[i] = heap[j];
+            heap[j] = part;
+        }
+    }
+
+    private final Synthesizer synthesizer;
+    private final Receiver receiver;
+    private final boolean timestamps;
+    private final long lookahead;
+    private final Object lock = new Object();
+    private PlaybackItem next;
+    private volatile boolean stopped;
+    private volatile float tempoFactor = 1;
+    private volatile Position position;
+    private int tempo;
+    private float appliedFactor;
+    private long lastSent;
+    /**
+     * Latest tick of the item playing handed to the synthesizer
+     */
+    private double sentTick;
+
+    /**
+     * @param synthesizer the open synthesizer, used as the clock
+     * @param receiver where the events go
+     * @param first the item to start with
+     */
+    EventScheduler(Synthesizer synthesizer, Receiver receiver, PlaybackItem first) {
+        this.synthesizer = synthesizer;
+        this.receiver = receiver;
+        this.next = first;
+        timestamps = synthesizer.getMicrosecondPosition() >= 0;
+        lookahead = timestamps ? LOOKAHEAD : 0;
+    }
+
+    /**
+     * Queues the item to play after the current one.
+     * @return Returns false if there already is a next item
+     */
+    boolean offer(PlaybackItem item) {
+        synchronized (lock) {
+            if (next != null || stopped) return false;
+            next = item;
+            return true;
+        }
+    }
+
+    void setTempoFactor(float factor) {
+        tempoFactor = factor;
+    }
+
+    /**
+     * Stops playing as soon as possible; the thread silences all notes and ends.
+     */
+    void stop() {
+        stopped = true;
+    }
+
+    /**
+     * @return Returns the item playing (or counting in) or null before the start
+     */
+    PlaybackItem getItem() {
+        Position p = position;
+        return p == null ? null : p.item;
+    }
+
+    /**
+     * @return Returns the tick the item playing is at, negative during its count-in
+     */
+    long getTick() {
+        Position p = position;
+        return p == null ? -1 : (long) Math.floor(p.tickAt(now()));
+    }
+
+    public void run() {
+        long start = now() + START_DELAY;
+        try {
+            PlaybackItem item = take(null);
+            boolean repeat = false;
+            while (item != null) {
+                start = play(item, start, repeat ? 0 : item.getCountIn());
+                if (start < 0) break;
+                PlaybackItem following = take(item);
+                repeat = following == item;
+                item = following;
+            }
+        } catch (InterruptedException ex) {
+            // stopped
+        } finally {
+            stopped = true;
+            allNotesOff();
+        }
+    }
+
+    /**
+     * Plays an item starting (with the count-in) at the given time.
+     * @return Returns the time the item ends, -1 if stopped
+     */
+    private long play(PlaybackItem item, long start, int countIn) throws InterruptedException {
+        MidiEvents events = item.getEvents();
+        tempo = events.getInitialTempo();
+        appliedFactor = tempoFactor;
+        double microsPerTick = tempo / (double) events.getResolution() / appliedFactor;
+        // tick 0 is after the count-in, so the count-in has negative ticks
+        double countInTicks = countIn * (double) events.getResolution();
+        position = new Position(item, -countInTicks, start, microsPerTick);
+        sentTick = Double.NEGATIVE_INFINITY;
+
+        for (int beat = 0; beat < countIn; beat++) {
+            double tick = (beat - countIn) * (double) events.getResolution();
+            if (!waitFor(tick)) return -1;
+            send(ShortMessage.NOTE_ON | CLICK_CHANNEL, CLICK_KEY, CLICK_VELOCITY, position.timeOf(tick));
+            send(ShortMessage.NOTE_OFF | CLICK_CHANNEL, CLICK_KEY, 0, position.timeOf(tick + events.getResolution() / 4));
+            sentTick = tick + events.getResolution() / 4;
+        }
+
+        for (Merge merge = new Merge(item.getParts()); merge.hasNext(); merge.advance()) {
+            long tick = merge.tick();
+            if (!waitFor(tick)) return -1;
+            int message = merge.message();
+            if ((message & 0xFF) == MidiEvents.TEMPO) {
+                Position p = position;
+                long at = p.timeOf(tick);
+                tempo = message >>> 8;
+                position = new Position(item, tick, at, tempo / (double) events.getResolution() / appliedFactor);
+            } else {
+                send(message & 0xFF, (message >> 8) & 0xFF, (message >> 16) & 0xFF, position.timeOf(tick));
+            }
+            sentTick = tick;
+        }
+        if (!waitFor(item.getLength())) return -1;
+        return position.timeOf(item.getLength());
+    }
+
+    /**
+     * Waits until an event on the tick is due to be sent, following tempo
+     * factor changes while waiting.
+     * @return Returns false if stopped
+     */
+    private boolean waitFor(double tick) throws InterruptedException {
+        while (!stopped) {
+            Position p = position;
+            if (tempoFactor != appliedFactor) {
+                // events up to the lookahead are sent already, change the speed
+                // after the last of them so none is timed before one sent earlier
+                double from = Math.max(sentTick, p.tickAt(now()));
+                appliedFactor = tempoFactor;
+                p = new Position(p.item, from, p.timeOf(from), tempo / (double) p.item.getEvents().getResolution() / appliedFactor);
+                position = p;
+            }
+            long wait = p.timeOf(tick) - lookahead - now();
+            if (wait <= 0) return true;
+            Thread.sleep(Math.min(MAX_SLEEP, wait / 1000 + 1));
+        }
+        return false;
+    }
+
+    /**
+     * @param current the item which just ended or null
+     * @return Returns the next item, the current one again if it loops and
+     * nothing is queued, or null if playback ends
+     */
+    private PlaybackItem take(PlaybackItem current) {
+        synchronized (lock) {
+            PlaybackItem item = next;
+            next = null;
+            if (stopped) return null;
+            if (item == null && current != null && current.isLooping()) return current;
+            return item;
+        }
+    }
+
+    private void send(int status, int data1, int data2, long time) {
+        try {
+            ShortMessage message = new ShortMessage();
+            message.setMessage(status, data1, data2);
+            receiver.send(message, timestamps ? time : -1);
+            lastSent = Math.max(lastSent, time);
+        } catch (InvalidMidiDataException ex) {
+            System.err.println(ex.getLocalizedMessage());
+        }
+    }
+
+    /**
+     * Silences every channel after everything already handed to the synthesizer.
+     */
+    private void allNotesOff() {
+        long time = Math.max(now(), lastSent) + 1;
+        for (int channel = 0; channel < 16; channel++) {
+            send(ShortMessage.CONTROL_CHANGE | channel, 123, 0, time);
+        }
+    }
+
+    private long now() {
+        return timestamps ? synthesizer.getMicrosecondPosition() : System.nanoTime() / 1000;
+    }
+}
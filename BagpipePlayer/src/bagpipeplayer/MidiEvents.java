@@ -0,0 +1,284 @@
+package bagpipeplayer;
+
+import abc.midi.NoteIndexMessage;
+import java.util.Arrays;
+import javax.sound.midi.MetaMessage;
+import javax.sound.midi.MidiEvent;
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.Sequence;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.Track;
+
+/**
+ * The playable content of a MIDI sequence as primitive arrays: one tick and
+ * one packed message per event, sorted by tick, plus abc4j's note index
+ * markers. This is what the {@link EventScheduler} plays; a tune's events
+ * take a few bytes each instead of a MidiEvent with its message and buffer.
+ * <p>
+ * Messages are packed as status | data1 &lt;&lt; 8 | data2 &lt;&lt; 16. Tempo
+ * changes use the status {@link #TEMPO} with the microseconds per quarter
+ * note in the upper 24 bits.
+ */
+public class MidiEvents {
+
+    /**
+     * Status used for tempo changes, never sent to a receiver
+     */
+    public static final int TEMPO = 0xFF;
+    /**
+     * Tempo of a sequence without tempo events (120 quarter notes per minute)
+     */
+    public static final int DEFAULT_TEMPO = 500000;
+
+    private static final int META_TEMPO = 0x51;
+    /**
+     * Meta message type abc4j uses for its note index markers
+     */
+    private static final int META_NOTE_INDEX = 0x40;
+
+    private final int resolution;
+    private final long length;
+    private final long[] ticks;
+    private final int[] messages;
+    private final long[] markerTicks;
+    private final int[] markerIndexes;
+
+    MidiEvents(int resolution, long length, long[] ticks, int[] messages, long[] markerTicks, int[] markerIndexes) {
+        this.resolution = resolution;
+        this.length = length;
+        this.ticks = ticks;
+        this.messages = messages;
+        this.markerTicks = markerTicks;
+        this.markerIndexes = markerIndexes;
+    }
+
+    /**
+     * Extracts the events of all tracks, merged in tick order. Events on the
+     * same tick keep their track order.
+     * @param sequence a PPQ sequence
+     * @return Returns the events
+     */
+    public static MidiEvents fromSequence(Sequence sequence) {
+        Track[] tracks = sequence.getTracks();
+        int total = 0;
+        for (Track track : tracks) total += track.size();
+
+        long[] t = new long[total];
+        int[] m = new int[total];
+        long[] mt = new long[16];
+        int[] mi = new int[16];
+        int count = 0, markers = 0;
+
+        // merge the (already sorted) tracks by always taking the earliest head
+        int[] heads = new int[tracks.length];
+        while (true) {
+            int best = -1;
+            long bestTick = Long.MAX_VALUE;
+            for (int k = 0; k < tracks.length; k++) {
+                if (heads[k] < tracks[k].size()) {
+                    long tick = tracks[k].get(heads[k]).getTick();
+                    if (tick < bestTick) {
+                        bestTick = tick;
+                        best = k;
+                    }
+                }
+            }
+            if (best < 0) break;
+            MidiEvent event = tracks[best].get(heads[best]++);
+            MidiMessage message = event.getMessage();
+            if (message instanceof ShortMessage) {
+                ShortMessage sm = (ShortMessage) message;
+                t[count] = bestTick;
+                m[count++] = sm.getStatus() | sm.getData1() << 8 | sm.getData2() << 16;
+            } else if (message instanceof MetaMessage) {
+                MetaMessage meta = (MetaMessage) message;
+                byte[] data = meta.getData();
+                if (meta.getType() == META_TEMPO && data.length == 3) {
+                    int mpq = (data[0] & 0xFF) << 16 | (data[1] & 0xFF) << 8 | (data[2] & 0xFF);
+                    t[count] = bestTick;
+                    m[count++] = TEMPO | mpq << 8;
+                } else if (meta.getType() == META_NOTE_INDEX) {
+                    if (markers == mt.length) {
+                        mt = Arrays.copyOf(mt, markers * 2);
+                        mi = Arrays.copyOf(mi, markers * 2);
+                    }
+                    mt[markers] = bestTick;
+                    mi[markers++] = NoteIndexMessage.getIndex(data);
+                }
+            }
+        }
+        return new MidiEvents(sequence.getResolution(), sequence.getTickLength(),
+                Arrays.copyOf(t, count), Arrays.copyOf(m, count),
+                Arrays.copyOf(mt, markers), Arrays.copyOf(mi, markers));
+    }
+
+    /**
+     * Cuts out the events between two ticks, e.g. for a practice loop. The
+     * slice starts at tick 0 with the programs, controllers and tempo in
+     * effect at the start, and every note still sounding at the end is
+     * released on its last tick, so it can be played on its own or repeated.
+     * @param from first tick
+     * @param to tick after the slice
+     * @return Returns the events of the slice
+     */
+    public MidiEvents slice(long from, long to) {
+        long[] t = new long[ticks.length + 16 * 128];
+        int[] m = new int[t.length];
+        int count = 0;
+
+        // state at the start: last program, controllers and tempo before it
+        int[] programs = new int[16];
+        int[] controllers = new int[16 * 128];
+        Arrays.fill(programs, -1);
+        Arrays.fill(controllers, -1);
+        int tempo = -1;
+        int i = 0;
+        for (; i < ticks.length && ticks[i] < from; i++) {
+            int message = messages[i];
+            int status = message & 0xFF;
+            if (status == TEMPO) {
+                tempo = message;
+            } else if ((status & 0xF0) == ShortMessage.PROGRAM_CHANGE) {
+                programs[status & 0x0F] = message;
+            } else if ((status & 0xF0) == ShortMessage.CONTROL_CHANGE) {
+                controllers[(status & 0x0F) * 128 + ((message >> 8) & 0x7F)] = message;
+            }
+        }
+        if (tempo >= 0) m[count++] = tempo;
+        for (int channel = 0; channel < 16; channel++) {
+            if (programs[channel] >= 0) m[count++] = programs[channel];
+        }
+        for (int c = 0; c < controllers.length; c++) {
+            if (controllers[c] >= 0) m[count++] = controllers[c];
+        }
+
+        // the slice itself, without the ends of notes started before it
+        boolean[] sounding = new boolean[16 * 128];
+        for (; i < ticks.length && ticks[i] <= to; i++) {
+            int message = messages[i];
+            int status = message & 0xFF;
+            int command = status & 0xF0;
+            boolean noteOn = command == ShortMessage.NOTE_ON && (message >> 16) > 0;
+            boolean noteOff = command == ShortMessage.NOTE_OFF || command == ShortMessage.NOTE_ON && !noteOn;
+            if (ticks[i] == to && !noteOff) break;
+            if (noteOn || noteOff) {
+                int slot = (status & 0x0F) * 128 + ((message >> 8) & 0x7F);
+                if (noteOff && !sounding[slot]) continue;
+                sounding[slot] = noteOn;
+            }
+            t[count] = ticks[i] - from;
+            m[count++] = message;
+        }
+        for (int slot = 0; slot < sounding.length; slot++) {
+            if (sounding[slot]) {
+                t[count] = to - from;
+                m[count++] = ShortMessage.NOTE_OFF | slot / 128 | (slot % 128) << 8;
+            }
+        }
+
+        int first = 0;
+        while (first < markerTicks.length && markerTicks[first] < from) first++;
+        int last = first;
+        while (last < markerTicks.length && markerTicks[last] < to) last++;
+        long[] mt = Arrays.copyOfRange(markerTicks, first, last);
+        for (int k = 0; k < mt.length; k++) mt[k] -= from;
+
+        return new MidiEvents(resolution, to - from, Arrays.copyOf(t, count), Arrays.copyOf(m, count),
+                mt, Arrays.copyOfRange(markerIndexes, first, last));
+    }
+
+    /**
+     * Moves the events to another channel, e.g. to play them along with other
+     * parts. Percussion parts play every note on one key, since the notes of
+     * a drum score only show the rhythm.
+     * @param channel the channel
+     * @param key the key every note is played on, -1 to keep the notes
+     * @param tempo false to drop the tempo changes, when another part leads
+     * @return Returns the moved events
+     */
+    public MidiEvents onChannel(int channel, int key, boolean tempo) {
+        long[] t = new long[ticks.length];
+        int[] m = new int[messages.length];
+        int count = 0;
+        for (int i = 0; i < ticks.length; i++) {
+            int message = messages[i];
+            int status = message & 0xFF;
+            if (status == TEMPO) {
+                if (!tempo) continue;
+            } else if (status < 0xF0) {
+                int command = status & 0xF0;
+                if (key >= 0 && command == ShortMessage.PROGRAM_CHANGE) continue;
+                if (key >= 0 && (command == ShortMessage.NOTE_ON || command == ShortMessage.NOTE_OFF)) {
+                    message = (message & 0xFF0000) | key << 8;
+                } else {
+                    message &= 0xFFFF00;
+                }
+                message |= command | channel;
+            }
+            t[count] = ticks[i];
+            m[count++] = message;
+        }
+        return new MidiEvents(resolution, length, Arrays.copyOf(t, count), Arrays.copyOf(m, count),
+                markerTicks, markerIndexes);
+    }
+
+    /**
+     * @return Returns the ticks per quarter note
+     */
+    public int getResolution() {
+        return resolution;
+    }
+
+    /**
+     * @return Returns the length in ticks, i.e. where the next tune may start
+     */
+    public long getLength() {
+        return length;
+    }
+
+    /**
+     * @return Returns the number of events
+     */
+    public int size() {
+        return ticks.length;
+    }
+
+    public long tick(int i) {
+        return ticks[i];
+    }
+
+    /**
+     * @return Returns the packed message of event i
+     */
+    public int message(int i) {
+        return messages[i];
+    }
+
+    /**
+     * @return Returns the microseconds per quarter note the events start with
+     */
+    public int getInitialTempo() {
+        for (int i = 0; i < ticks.length && ticks[i] == 0; i++) {
+            if ((messages[i] & 0xFF) == TEMPO) return messages[i] >>> 8;
+        }
+        return DEFAULT_TEMPO;
+    }
+
+    /**
+     * @return Returns the number of note index markers
+     */
+    public int markerCount() {
+        return markerTicks.length;
+    }
+
+    public long markerTick(int i) {
+        return markerTicks[i];
+    }
+
+    /**
+     * @return Returns the index of the note in the tune's audio voice
+     */
+    public int markerIndex(int i) {
+        return markerIndexes[i];
+    }
+}
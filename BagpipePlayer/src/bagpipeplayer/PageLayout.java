@@ -0,0 +1,148 @@
+package bagpipeplayer;
+
+import abc.notation.MusicElement;
+import abc.notation.Voice;
+import abc.ui.swing.JScoreComponent;
+import abc.ui.swing.JScoreElement;
+import java.awt.Dimension;
+import java.awt.geom.Rectangle2D;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Where the pages of one engraved tune begin and end. Pages only break
+ * between staff lines (unless a single line is taller than the page); the
+ * staff lines are found from the bounding boxes of the engraved notes. The
+ * score is scaled down to fit the page width, never up.
+ * <p>
+ * A layout holds nothing but the page positions, so the layouts of any
+ * number of tunes can be kept.
+ */
+final class PageLayout {
+
+    private final double pageWidth;
+    private final double pageHeight;
+    private final long modified;
+    private final double scale;
+    /**
+     * Top of every page in score coordinates, followed by the bottom of the last one
+     */
+    private final double[] tops;
+
+    private PageLayout(double pageWidth, double pageHeight, long modified, double scale, double[] tops) {
+        this.pageWidth = pageWidth;
+        this.pageHeight = pageHeight;
+        this.modified = modified;
+        this.scale = scale;
+        this.tops = tops;
+    }
+
+    /**
+     * Breaks an engraved tune into pages.
+     * @param score the score component the tune is set in
+     * @param voice the engraved voice
+     * @param pageWidth printable width of a page
+     * @param pageHeight printable height of a page
+     * @param modified when the tune's file was last modified, 0 if it has none
+     * @return Returns the layout
+     */
+    static PageLayout of(JScoreComponent score, Voice voice, double pageWidth, double pageHeight, long modified) {
+        // set by setTune(), getDimension() would engrave the tune again
+        Dimension size = score.getPreferredSize();
+        double scale = Math.min(1, pageWidth / Math.max(1, size.width));
+        double height = pageHeight / scale;
+        double[] tops = new double[8];
+        int pages = 1;
+        double top = 0;
+        double bottom = 0;
+        for (double[] line : staffLines(score, voice)) {
+            if (line[1] - top > height && line[0] > top) {
+                top = Math.min((bottom + line[0]) / 2, top + height);
+                tops = grow(tops, pages);
+                tops[pages++] = top;
+            }
+            while (line[1] - top > height) {
+                top += height;
+                tops = grow(tops, pages);
+                tops[pages++] = top;
+            }
+            bottom = Math.max(bottom, line[1]);
+        }
+        bottom = Math.max(bottom, size.height);
+        while (bottom - top > height) {
+            top += height;
+            tops = grow(tops, pages);
+            tops[pages++] = top;
+        }
+        tops = grow(tops, pages);
+        tops[pages] = bottom;
+        return new PageLayout(pageWidth, pageHeight, modified, scale, Arrays.copyOf(tops, pages + 1));
+    }
+
+    /**
+     * @return Returns the vertical extent (top, bottom) of every staff line
+     * from top to bottom, as the overlapping bounding boxes of its elements
+     */
+    private static double[][] staffLines(JScoreComponent score, Voice voice) {
+        double[][] boxes = new double[voice.size()][];
+        int count = 0;
+        for (int i = 0; i < voice.size(); i++) {
+            JScoreElement rendition = score.getRenditionElementFor((MusicElement) voice.elementAt(i));
+            Rectangle2D box = rendition == null ? null : rendition.getBoundingBox();
+            if (box != null && !box.isEmpty()) {
+                boxes[count++] = new double[] { box.getMinY(), box.getMaxY() };
+            }
+        }
+        Arrays.sort(boxes, 0, count, new Comparator<double[]>() {
+            public int compare(double[] a, double[] b) {
+                return Double.compare(a[0], b[0]);
+            }
+        });
+        int lines = 0;
+        for (int i = 0; i < count; i++) {
+            if (lines > 0 && boxes[i][0] <= boxes[lines - 1][1]) {
+                boxes[lines - 1][1] = Math.max(boxes[lines - 1][1], boxes[i][1]);
+            } else {
+                boxes[lines++] = boxes[i];
+            }
+        }
+        return Arrays.copyOf(boxes, lines);
+    }
+
+    private static double[] grow(double[] array, int index) {
+        return index < array.length ? array : Arrays.copyOf(array, array.length * 2);
+    }
+
+    /**
+     * @return Returns true if the layout was made for pages of this size and
+     * for the tune's current version
+     */
+    boolean fits(double pageWidth, double pageHeight, long modified) {
+        return this.pageWidth == pageWidth && this.pageHeight == pageHeight && this.modified == modified;
+    }
+
+    int getPageCount() {
+        return tops.length - 1;
+    }
+
+    /**
+     * @return Returns the factor from score to page coordinates
+     */
+    double getScale() {
+        return scale;
+    }
+
+    /**
+     * @return Returns the top of a page in score coordinates
+     */
+    double getTop(int page) {
+        return tops[page];
+    }
+
+    /**
+     * @return Returns the bottom of a page in score coordinates
+     */
+    double getBottom(int page) {
+        return tops[page + 1];
+    }
+}
@@ -0,0 +1,97 @@
+package bagpipeplayer;
+
+import abc.notation.MusicElement;
+import abc.notation.Tune;
+import abc.notation.Voice;
+import abc.ui.swing.JScoreElement;
+import java.awt.Rectangle;
+import java.awt.geom.Rectangle2D;
+import java.util.Arrays;
+
+/**
+ * Highlights the note currently sounding and keeps it scrolled into view.
+ * <p>
+ * The note index markers of the tune's events are turned once into a table
+ * sorted by tick, holding the on-screen bounds of each note. Every position
+ * callback is then a binary search in that table, and only the previous and
+ * the current note are repainted.
+ */
+public class PlaybackCursor {
+
+    /**
+     * Space kept around the highlighted note when scrolling
+     */
+    private static final int SCROLL_MARGIN = 40;
+
+    private final ScoreCanvas canvas;
+    private final long[] ticks;
+    private final Rectangle[] bounds;
+    private int current = -1;
+
+    /**
+     * Builds the tick index. The score must already show the tune.
+     * @param canvas the component displaying the tune
+     * @param tune the tune being played
+     * @param events the events created for the tune by {@link ScorePlayer#toEvents(Tune)}
+     */
+    public PlaybackCursor(ScoreCanvas canvas, Tune tune, MidiEvents events) {
+        this.canvas = canvas;
+        Voice voice = tune.getMusicForAudioRendition().getFirstVoice();
+
+        // the markers are sorted by tick already
+        int count = events.markerCount();
+        long[] t = new long[count];
+        Rectangle[] b = new Rectangle[count];
+        int n = 0;
+        for (int i = 0; i < count; i++) {
+            int index = events.markerIndex(i);
+            if (index >= voice.size()) continue;
+            JScoreElement rendition = canvas.getRenditionElementFor((MusicElement) voice.elementAt(index));
+            if (rendition == null) continue;
+            Rectangle2D box = rendition.getBoundingBox();
+            t[n] = events.markerTick(i);
+            b[n] = box.getBounds();
+            n++;
+        }
+        ticks = Arrays.copyOf(t, n);
+        bounds = Arrays.copyOf(b, n);
+    }
+
+    /**
+     * @param tick a playback position
+     * @return Returns the index of the last note starting at or before the tick, -1 if none
+     */
+    int noteAt(long tick) {
+        int i = Arrays.binarySearch(ticks, tick);
+        if (i < 0) return -i - 2;
+        // several notes may start on the same tick, take the last one
+        while (i + 1 < ticks.length && ticks[i + 1] == tick) i++;
+        return i;
+    }
+
+    /**
+     * Highlights the note sounding at the tick.
+     * @param tick a playback position
+     */
+    public void positionChanged(long tick) {
+        int note = noteAt(tick);
+        if (note == current) return;
+        current = note;
+        if (note < 0) {
+            canvas.setHighlight(null);
+            return;
+        }
+        Rectangle r = bounds[note];
+        canvas.setHighlight(r);
+        canvas.scrollRectToVisible(new Rectangle(r.x - SCROLL_MARGIN, r.y - SCROLL_MARGIN,
+                r.width + 2 * SCROLL_MARGIN, r.height + 2 * SCROLL_MARGIN));
+    }
+
+    /**
+     * Removes the highlight.
+     */
+    public void playbackStopped() {
+        current = -1;
+        canvas.setHighlight(null);
+    }
+}
@@ -0,0 +1,114 @@
+package bagpipeplayer;
+
+import abc.notation.Tune;
+import java.io.File;
+
+/**
+ * A tune ready to be played: the tune itself (for display) and its events.
+ * A band score also has the events of the other parts, which are played
+ * along with the tune's. The tune's file, if it has one, tells which tab
+ * shows it.
+ */
+public class PlaybackItem {
+
+    private final Tune tune;
+    private final File source;
+    private final MidiEvents events;
+    private final MidiEvents[] parts;
+    private final int countIn;
+    private final boolean looping;
+
+    /**
+     * @param tune the tune
+     * @param events the tune's MIDI events
+     * @param countIn number of beats clicked before the tune starts
+     */
+    public PlaybackItem(Tune tune, MidiEvents events, int countIn) {
+        this(tune, events, countIn, false);
+    }
+
+    /**
+     * @param tune the tune
+     * @param source the file the tune was loaded from or null
+     * @param events the tune's MIDI events
+     * @param countIn number of beats clicked before the tune starts
+     */
+    public PlaybackItem(Tune tune, File source, MidiEvents events, int countIn) {
+        this(tune, source, events, new MidiEvents[0], countIn, false);
+    }
+
+    /**
+     * @param tune the tune
+     * @param events the tune's MIDI events or a slice of them
+     * @param countIn number of beats clicked before the first repeat
+     * @param looping true to repeat the events until stopped
+     */
+    public PlaybackItem(Tune tune, MidiEvents events, int countIn, boolean looping) {
+        this(tune, null, events, new MidiEvents[0], countIn, looping);
+    }
+
+    /**
+     * @param tune the tune shown, e.g. the pipe part of a band score
+     * @param source the file the tune was loaded from or null
+     * @param events the tune's MIDI events
+     * @param accompaniment the events of the other parts, on channels of
+     * their own and with the same resolution
+     * @param countIn number of beats clicked before the first repeat
+     * @param looping true to repeat the events until stopped
+     */
+    public PlaybackItem(Tune tune, File source, MidiEvents events, MidiEvents[] accompaniment, int countIn,
+            boolean looping) {
+        this.tune = tune;
+        this.source = source;
+        this.events = events;
+        this.countIn = countIn;
+        this.looping = looping;
+        parts = new MidiEvents[accompaniment.length + 1];
+        parts[0] = events;
+        System.arraycopy(accompaniment, 0, parts, 1, accompaniment.length);
+    }
+
+    public Tune getTune() {
+        return tune;
+    }
+
+    /**
+     * @return Returns the file the tune was loaded from or null if it has none
+     */
+    public File getSource() {
+        return source;
+    }
+
+    public MidiEvents getEvents() {
+        return events;
+    }
+
+    /**
+     * @return Returns the tune's events followed by the other parts' events
+     */
+    MidiEvents[] getParts() {
+        return parts.clone();
+    }
+
+    /**
+     * @return Returns the ticks until the longest part has ended
+     */
+    public long getLength() {
+        long length = 0;
+        for (MidiEvents part : parts) {
+            length = Math.max(length, part.getLength());
+        }
+        return length;
+    }
+
+    public int getCountIn() {
+        return countIn;
+    }
+
+    /**
+     * @return Returns true if the events repeat until playback is stopped
+     */
+    public boolean isLooping() {
+        return looping;
+    }
+}
@@ -0,0 +1,113 @@
+package bagpipeplayer;
+
+import abc.notation.BarLine;
+import abc.notation.EndOfStaffLine;
+import abc.notation.MeasureRepeat;
+import abc.notation.MusicElement;
+import abc.notation.RepeatEnd;
+import abc.notation.Tune;
+import abc.notation.Voice;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Loops a range of bars for practice.
+ * <p>
+ * Bars are delimited by the bar lines in the tune, including the repeat
+ * signs and staff ends BwwConverter emits. The bars are cut out of the tune's
+ * events once; the scheduler then plays the slice over and over, every
+ * repeat starting on the tick the one before ends.
+ */
+final class PracticeLoop {
+
+    private PracticeLoop() {
+    }
+
+    /**
+     * @return Returns true if the element ends a bar
+     */
+    static boolean isBarLine(Object element) {
+        return element instanceof BarLine || element instanceof MeasureRepeat
+                || element instanceof RepeatEnd || element instanceof EndOfStaffLine;
+    }
+
+    /**
+     * @param voice the voice containing both elements
+     * @param first an element in the first bar
+     * @param last an element in the last bar, may be before the first one
+     * @return Returns the elements of the bars from the first to the last
+     * element's bar, without the bar lines around them
+     */
+    static List<MusicElement> barsBetween(Voice voice, MusicElement first, MusicElement last) {
+        List<MusicElement> bars = new ArrayList<MusicElement>();
+        int a = indexOf(voice, first, 0), b = indexOf(voice, last, 0);
+        if (a < 0 || b < 0) return bars;
+        if (b < a) {
+            int swap = a;
+            a = b;
+            b = swap;
+        }
+        int from = barStart(voice, a), to = barEnd(voice, b);
+        for (int i = from; i < to; i++) {
+            bars.add((MusicElement) voice.elementAt(i));
+        }
+        return bars;
+    }
+
+    /**
+     * Cuts the bars from the first to the last element's bar out of a tune's
+     * events.
+     * @param tune the tune
+     * @param events the tune's events
+     * @param first an element in the first bar
+     * @param last an element in the last bar
+     * @return Returns a looping item or null if the bars have no notes
+     */
+    static PlaybackItem create(Tune tune, MidiEvents events, MusicElement first, MusicElement last) {
+        // the audio voice has the repeats written out, the markers point into it
+        Voice voice = tune.getMusicForAudioRendition().getFirstVoice();
+        int a = indexOf(voice, first, 0);
+        if (a < 0) return null;
+        int b = indexOf(voice, last, a);
+        if (b < 0) {
+            b = a;
+            a = indexOf(voice, last, 0);
+            if (a < 0) return null;
+        }
+        int from = barStart(voice, a), to = barEnd(voice, b);
+
+        long start = -1, end = events.getLength();
+        for (int i = 0; i < events.markerCount(); i++) {
+            int index = events.markerIndex(i);
+            boolean inside = index >= from && index < to;
+            if (start < 0) {
+                if (inside) start = events.markerTick(i);
+            } else if (!inside && events.markerTick(i) > start) {
+                end = events.markerTick(i);
+                break;
+            }
+        }
+        if (start < 0) return null;
+        return new PlaybackItem(tune, events.slice(start, end), 0, true);
+    }
+
+    /**
+     * @return Returns the index of the element at or after the index, -1 if none
+     */
+    private static int indexOf(Voice voice, MusicElement element, int from) {
+        for (int i = from; i < voice.size(); i++) {
+            if (voice.elementAt(i) == element) return i;
+        }
+        return -1;
+    }
+
+    private static int barStart(Voice voice, int index) {
+        while (index > 0 && !isBarLine(voice.elementAt(index - 1))) index--;
+        return index;
+    }
+
+    private static int barEnd(Voice voice, int index) {
+        while (index < voice.size() && !isBarLine(voice.elementAt(index))) index++;
+        return index;
+    }
+}
@@ -0,0 +1,129 @@
+package bagpipeplayer;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.geom.Rectangle2D;
+import java.awt.print.PageFormat;
+import javax.swing.JComponent;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+
+/**
+ * Shows the pages of a {@link ScoreBook} one below the other, at print size.
+ * Only the pages in the visible area are painted, so scrolling through a
+ * long set engraves one tune at a time. Pages appear while the book is
+ * still being laid out, with empty staves until their tune is engraved.
+ */
+public class PrintPreview extends JComponent implements ChangeListener {
+
+    /**
+     * Space around the pages
+     */
+    private static final int GAP = 12;
+    private static final Color PAGE_SHADOW = new Color(0, 0, 0, 60);
+    private static final Color PLACEHOLDER = new Color(0, 0, 0, 40);
+    /**
+     * Distance between the staves and between the lines of a placeholder staff
+     */
+    private static final int STAFF_GAP = 60, LINE_GAP = 6;
+
+    private ScoreBook book;
+
+    public PrintPreview() {
+        setOpaque(true);
+        setBackground(Color.GRAY);
+    }
+
+    /**
+     * @param book the pages to show, null to show none
+     */
+    void setBook(ScoreBook book) {
+        if (this.book != null) this.book.removeChangeListener(this);
+        this.book = book;
+        if (book != null) book.addChangeListener(this);
+        revalidate();
+        repaint();
+    }
+
+    ScoreBook getBook() {
+        return book;
+    }
+
+    /**
+     * More pages are laid out
+     */
+    public void stateChanged(ChangeEvent e) {
+        revalidate();
+        repaint();
+    }
+
+    /**
+     * @return Returns the number of pages shown: those laid out plus one
+     * empty page while the rest is still being laid out
+     */
+    private int shownPages() {
+        if (book == null) return 0;
+        return book.getPageCount() + (book.isDone() ? 0 : 1);
+    }
+
+    @Override
+    public Dimension getPreferredSize() {
+        if (book == null) return new Dimension(GAP * 2, GAP * 2);
+        PageFormat format = book.getPageFormat();
+        int pageHeight = (int) Math.ceil(format.getHeight());
+        return new Dimension((int) Math.ceil(format.getWidth()) + GAP * 2,
+                shownPages() * (pageHeight + GAP) + GAP);
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        Rectangle clip = g.getClipBounds();
+        if (clip == null) clip = new Rectangle(getSize());
+        g.setColor(getBackground());
+        g.fillRect(clip.x, clip.y, clip.width, clip.height);
+        if (book == null) return;
+
+        PageFormat format = book.getPageFormat();
+        int pageWidth = (int) Math.ceil(format.getWidth());
+        int pageHeight = (int) Math.ceil(format.getHeight());
+        int x = Math.max(GAP, (getWidth() - pageWidth) / 2);
+        int count = book.getPageCount();
+        int first = Math.max(0, (clip.y - GAP) / (pageHeight + GAP));
+        int last = Math.min(shownPages() - 1, (clip.y + clip.height) / (pageHeight + GAP));
+        for (int page = first; page <= last; page++) {
+            int y = GAP + page * (pageHeight + GAP);
+            g.setColor(PAGE_SHADOW);
+            g.fillRect(x + 3, y + 3, pageWidth, pageHeight);
+            g.setColor(Color.WHITE);
+            g.fillRect(x, y, pageWidth, pageHeight);
+            if (page < count) {
+                Graphics2D g2 = (Graphics2D) g.create();
+                try {
+                    g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+                    g2.translate(x + format.getImageableX(), y + format.getImageableY());
+                    g2.clip(new Rectangle2D.Double(0, 0, format.getImageableWidth(), format.getImageableHeight()));
+                    if (!book.paintPage(g2, page, false)) paintPlaceholder(g2, format);
+                } finally {
+                    g2.dispose();
+                }
+            }
+        }
+    }
+
+    /**
+     * Paints empty staves on a page whose tune is still being engraved.
+     */
+    private void paintPlaceholder(Graphics2D g, PageFormat format) {
+        int width = (int) format.getImageableWidth();
+        g.setColor(PLACEHOLDER);
+        for (int y = STAFF_GAP / 2; y + 4 * LINE_GAP < format.getImageableHeight(); y += STAFF_GAP) {
+            for (int line = 0; line < 5; line++) {
+                g.drawLine(0, y + line * LINE_GAP, width, y + line * LINE_GAP);
+            }
+        }
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * PrintPreviewDialog.java
+ */
+
+package bagpipeplayer;
+
+import java.awt.print.PrinterJob;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+import org.jdesktop.application.Action;
+import org.jdesktop.application.ResourceMap;
+
+/**
+ * Shows tunes as they will be printed and prints them
+ */
+public class PrintPreviewDialog extends javax.swing.JDialog {
+
+    private final ScoreBook book;
+    private final PrinterJob job;
+    private final ResourceMap resourceMap;
+    private boolean printing;
+
+    /**
+     * Shows the print preview, the pages appear as they are laid out
+     * @param parent
+     * @param book the pages to show and print
+     * @param job the printer job the book's page format is from
+     */
+    PrintPreviewDialog(java.awt.Frame parent, ScoreBook book, PrinterJob job) {
+        super(parent);
+        this.book = book;
+        this.job = job;
+        initComponents();
+        resourceMap = org.jdesktop.application.Application.getInstance(bagpipeplayer.BagpipePlayerApp.class).getContext().getResourceMap(PrintPreviewDialog.class);
+        preview.setBook(book);
+        book.addChangeListener(new ChangeListener() {
+            public void stateChanged(ChangeEvent e) {
+                showPageCount();
+            }
+        });
+        showPageCount();
+        getRootPane().setDefaultButton(printButton);
+    }
+
+    private void showPageCount() {
+        String key = book.isDone() ? "pageLabel.text" : "pageLabel.busyText";
+        pageLabel.setText(resourceMap.getString(key, book.getPageCount()));
+    }
+
+    /**
+     * Asks for the printer and prints in the background
+     */
+    @Action public void printBook() {
+        if (job.printDialog()) {
+            printing = true;
+            book.printInBackground(job);
+            dispose();
+        }
+    }
+
+    /**
+     * Closes the preview without printing
+     */
+    @Action public void closePreview() {
+        dispose();
+    }
+
+    @Override
+    public void dispose() {
+        // no more pages needed unless they are being printed
+        if (!printing) book.cancel();
+        preview.setBook(null);
+        super.dispose();
+    }
+
+    /** This method is called from within the constructor to
+     * initialize the form.
+     * WARNING: Do NOT modify this code. The content of this method is
+     * always regenerated by the Form Editor.
+     */
+    // <editor-fold defaultstate="collapsed" desc="Generated Code">//GEN-BEGIN:initComponents
+    private void initComponents() {
+
+        javax.swing.JScrollPane previewScrollPane = new javax.swing.JScrollPane();
+        preview = new bagpipeplayer.PrintPreview();
+        pageLabel = new javax.swing.JLabel();
+        printButton = new javax.swing.JButton();
+        javax.swing.JButton closeButton = new javax.swing.JButton();
+
+        setDefaultCloseOperation(javax.swing.WindowConstants.DISPOSE_ON_CLOSE);
+        org.jdesktop.application.ResourceMap resourceMap = org.jdesktop.application.Application.getInstance(bagpipeplayer.BagpipePlayerApp.class).getContext().getResourceMap(PrintPreviewDialog.class);
+        setTitle(resourceMap.getString("title")); // NOI18N
+        setName("printPreview"); // NOI18N
+
+        previewScrollPane.setName("previewScrollPane"); // NOI18N
+
+        preview.setName("preview"); // NOI18N
+        previewScrollPane.setViewportView(preview);
+
+        pageLabel.setName("pageLabel"); // NOI18N
+
+        javax.swing.ActionMap actionMap = org.jdesktop.application.Application.getInstance(bagpipeplayer.BagpipePlayerApp.class).getContext().getActionMap(PrintPreviewDialog.class, this);
+        printButton.setAction(actionMap.get("printBook")); // NOI18N
+        printButton.setName("printButton"); // NOI18N
+
+        closeButton.setAction(actionMap.get("closePreview")); // NOI18N
+        closeButton.setName("closeButton"); // NOI18N
+
+        javax.swing.GroupLayout layout = new javax.swing.GroupLayout(getContentPane());
+        getContentPane().setLayout(layout);
+        layout.setHorizontalGroup(
+            layout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
+            .addGroup(layout.createSequentialGroup()
+                .addContainerGap()
+                .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
+                    .addComponent(previewScrollPane, javax.swing.GroupLayout.DEFAULT_SIZE, 660, Short.MAX_VALUE)
+                    .addGroup(layout.createSequentialGroup()
+                        .addComponent(pageLabel)
+                        .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED, javax.swing.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE)
+                        .addComponent(printButton)
+                        .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                        .addComponent(closeButton)))
+                .addContainerGap())
+        );
+        layout.setVerticalGroup(
+            layout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
+            .addGroup(layout.createSequentialGroup()
+                .addContainerGap()
+                .addComponent(previewScrollPane, javax.swing.GroupLayout.DEFAULT_SIZE, 560, Short.MAX_VALUE)
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
+                    .addComponent(pageLabel)
+                    .addComponent(printButton)
+                    .addComponent(closeButton))
+                .addContainerGap())
+        );
+
+        pack();
+    }// </editor-fold>//GEN-END:initComponents
+
+    // Variables declaration - do not modify//GEN-BEGIN:variables
+    private javax.swing.JLabel pageLabel;
+    private bagpipeplayer.PrintPreview preview;
+    private javax.swing.JButton printButton;
+    // End of variables declaration//GEN-END:variables
+
+}
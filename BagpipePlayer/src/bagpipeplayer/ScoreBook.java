@@ -0,0 +1,408 @@
+package bagpipeplayer;
+
+import abc.notation.Tune;
+import abc.ui.swing.JScoreComponent;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.print.PageFormat;
+import java.awt.print.Printable;
+import java.awt.print.PrinterException;
+import java.awt.print.PrinterJob;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import javax.swing.SwingUtilities;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+
+/**
+ * Tunes laid out on pages for printing, e.g. all tunes of a set.
+ * <p>
+ * The page breaks are computed on a background thread, tune by tune, and
+ * listeners are told whenever more pages are known, so a preview can show
+ * the first pages while the rest are still being laid out. The
+ * {@link PageLayout}s are cached per file (the ones used last) or tune and
+ * page size, so previewing and then printing lays out every tune only once.
+ * <p>
+ * Pages are engraved only when they are painted, from the tune they belong
+ * to, on a worker thread; the preview paints a placeholder until the tune is
+ * engraved and is told when it is. Only the tune engraved last is kept.
+ * Printing therefore streams page after page and takes the same memory
+ * however long the set is. Each tune starts on a new page.
+ */
+final class ScoreBook implements Printable {
+
+    private static final ExecutorService PAGINATOR = worker("ScoreBook", Thread.MIN_PRIORITY);
+    /**
+     * Engraves the tunes of the pages painted, apart from the paginator so
+     * a page shows up without waiting for the whole set to be laid out
+     */
+    private static final ExecutorService ENGRAVER = worker("ScoreBook engraver", Thread.NORM_PRIORITY);
+    /**
+     * Number of file layouts kept
+     */
+    private static final int CACHED_FILES = 256;
+    /**
+     * Layouts by the canonical path of the file they were made for
+     */
+    private static final Map<String, PageLayout> FILE_LAYOUTS =
+            Collections.synchronizedMap(new LeastRecentlyUsed<String, PageLayout>(CACHED_FILES));
+    /**
+     * Layouts of tunes without a file, kept as long as the tune is
+     */
+    private static final Map<Tune, PageLayout> TUNE_LAYOUTS =
+            Collections.synchronizedMap(new WeakHashMap<Tune, PageLayout>());
+
+    /**
+     * A map dropping the entry used least recently when it grows too large
+     */
+    private static final class LeastRecentlyUsed<K, V> extends LinkedHashMap<K, V> {
+        private static final long serialVersionUID = 1L;
+        private final int capacity;
+
+        LeastRecentlyUsed(int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+            return size() > capacity;
+        }
+    }
+
+    /**
+     * Tunes and files, in print order
+     */
+    private final List<Object> sources;
+    private final PageFormat format;
+    private final List<ChangeListener> listeners = new ArrayList<ChangeListener>();
+    /**
+     * Layouts of the sources laid out so far, null for those which couldn't be loaded
+     */
+    private final List<PageLayout> layouts = new ArrayList<PageLayout>();
+    private final List<Integer> firstPages = new ArrayList<Integer>();
+    private int pageCount;
+    private boolean done;
+    private Future<?> pagination;
+    /**
+     * Set when the book isn't needed anymore. Checked instead of interrupting
+     * the shared paginator thread, which may be laying out another book by then.
+     */
+    private volatile boolean cancelled;
+    private int renderedSource = -1;
+    private JScoreComponent renderer;
+    private int renderingSource = -1;
+    private Future<JScoreComponent> rendering;
+
+    /**
+     * @param tune the tune to print
+     * @param format the page format
+     */
+    ScoreBook(Tune tune, PageFormat format) {
+        this(format, Collections.singletonList(tune));
+    }
+
+    /**
+     * @param files the tunes to print, in print order
+     * @param format the page format
+     */
+    ScoreBook(List<File> files, PageFormat format) {
+        this(format, files);
+    }
+
+    private ScoreBook(PageFormat format, List<?> sources) {
+        this.sources = new ArrayList<Object>(sources);
+        this.format = format;
+        pagination = PAGINATOR.submit(new Runnable() {
+            public void run() {
+                paginate();
+            }
+        });
+    }
+
+    /**
+     * Adds a listener told (on the event dispatch thread) whenever more
+     * pages are laid out and when the layout is done.
+     */
+    void addChangeListener(ChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    void removeChangeListener(ChangeListener listener) {
+        listeners.remove(listener);
+    }
+
+    PageFormat getPageFormat() {
+        return format;
+    }
+
+    /**
+     * @return Returns the number of pages laid out so far
+     */
+    synchronized int getPageCount() {
+        return pageCount;
+    }
+
+    /**
+     * @return Returns true once all tunes are laid out
+     */
+    synchronized boolean isDone() {
+        return done;
+    }
+
+    /**
+     * Stops laying out pages, e.g. when the preview is closed without printing.
+     */
+    synchronized void cancel() {
+        cancelled = true;
+        // only removes the tasks if they haven't started yet
+        pagination.cancel(false);
+        if (rendering != null) rendering.cancel(false);
+        done = true;
+        notifyAll();
+    }
+
+    private void paginate() {
+        double width = format.getImageableWidth();
+        double height = format.getImageableHeight();
+        try {
+            for (int index = 0; index < sources.size(); index++) {
+                if (cancelled) return;
+                Object source = sources.get(index);
+                long modified = source instanceof File ? ((File) source).lastModified() : 0;
+                PageLayout layout = cachedLayout(source);
+                if (layout == null || !layout.fits(width, height, modified)) {
+                    try {
+                        Tune tune = load(source);
+                        JScoreComponent score = engrave(tune);
+                        layout = PageLayout.of(score, tune.getMusicForGraphicalRendition().getFirstVoice(),
+                                width, height, modified);
+                        cacheLayout(source, layout);
+                        synchronized (this) {
+                            // saves engraving the first tune again for the first page
+                            if (renderer == null) {
+                                renderer = score;
+                                renderedSource = index;
+                            }
+                        }
+                    } catch (IOException ex) {
+                        System.err.println(ex.getLocalizedMessage());
+                        layout = null;
+                    }
+                }
+                synchronized (this) {
+                    layouts.add(layout);
+                    firstPages.add(pageCount);
+                    if (layout != null) pageCount += layout.getPageCount();
+                    notifyAll();
+                }
+                fireChange();
+            }
+        } finally {
+            synchronized (this) {
+                done = true;
+                notifyAll();
+            }
+            fireChange();
+        }
+    }
+
+    /**
+     * Paints a page at the origin of the imageable area. Pages not laid out
+     * yet are left blank. If the page's tune isn't engraved, it is engraved
+     * on a worker thread and listeners are told when it is done.
+     * @param g the graphics, translated to the imageable area
+     * @param page the page index
+     * @param wait true to wait for the tune to be engraved, never on the
+     * event dispatch thread
+     * @return Returns false if nothing was painted since the tune isn't
+     * engraved yet (or couldn't be loaded)
+     */
+    boolean paintPage(Graphics2D g, int page, boolean wait) {
+        PageLayout layout;
+        int source;
+        int first;
+        JScoreComponent score = null;
+        Future<JScoreComponent> pending = null;
+        synchronized (this) {
+            if (page >= pageCount) return false;
+            source = firstPages.size() - 1;
+            while (layouts.get(source) == null || firstPages.get(source) > page) source--;
+            layout = layouts.get(source);
+            first = firstPages.get(source);
+            if (renderedSource == source) {
+                score = renderer;
+            } else {
+                pending = engrave(source);
+            }
+        }
+        if (score == null) {
+            if (!wait) return false;
+            try {
+                score = pending.get();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException ex) {
+                System.err.println(ex.getCause().getLocalizedMessage());
+            }
+            if (score == null) return false;
+        }
+        double top = layout.getTop(page - first);
+        double bottom = layout.getBottom(page - first);
+        Graphics2D g2 = (Graphics2D) g.create();
+        try {
+            g2.scale(layout.getScale(), layout.getScale());
+            g2.translate(0, -top);
+            g2.clip(new Rectangle2D.Double(0, top, format.getImageableWidth() / layout.getScale(), bottom - top));
+            // the engraver isn't thread safe, preview and print job take turns
+            synchronized (score) {
+                score.drawIn(g2);
+            }
+        } finally {
+            g2.dispose();
+        }
+        return true;
+    }
+
+    /**
+     * Engraves a tune on the worker thread, unless it is being engraved
+     * already. The score replaces the one painted last when it is done.
+     * @param source index of the tune
+     * @return Returns the score, null if the tune couldn't be loaded
+     */
+    private synchronized Future<JScoreComponent> engrave(final int source) {
+        if (rendering != null && renderingSource == source) return rendering;
+        final Object tune = sources.get(source);
+        renderingSource = source;
+        rendering = ENGRAVER.submit(new Callable<JScoreComponent>() {
+            public JScoreComponent call() {
+                JScoreComponent score;
+                try {
+                    score = engrave(load(tune));
+                } catch (IOException ex) {
+                    System.err.println(ex.getLocalizedMessage());
+                    return null;
+                }
+                synchronized (ScoreBook.this) {
+                    renderer = score;
+                    renderedSource = source;
+                }
+                fireChange();
+                return score;
+            }
+        });
+        return rendering;
+    }
+
+    /**
+     * Prints a page, waiting for its layout if it isn't known yet.
+     */
+    public int print(Graphics g, PageFormat pageFormat, int pageIndex) throws PrinterException {
+        synchronized (this) {
+            try {
+                while (!done && pageIndex >= pageCount) wait();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new PrinterException("interrupted");
+            }
+            if (pageIndex >= pageCount) return NO_SUCH_PAGE;
+        }
+        Graphics2D g2 = (Graphics2D) g.create();
+        try {
+            g2.translate(pageFormat.getImageableX(), pageFormat.getImageableY());
+            paintPage(g2, pageIndex, true);
+        } finally {
+            g2.dispose();
+        }
+        return PAGE_EXISTS;
+    }
+
+    /**
+     * Prints on a background thread, so the application stays responsive
+     * however long the set is. Problems are reported on System.err.
+     * @param job the job, set up by the user
+     */
+    void printInBackground(final PrinterJob job) {
+        job.setPrintable(this, format);
+        Thread t = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    job.print();
+                } catch (PrinterException ex) {
+                    System.err.println(ex.getLocalizedMessage());
+                }
+            }
+        }, "Printing");
+        t.start();
+    }
+
+    private static PageLayout cachedLayout(Object source) {
+        return source instanceof File ? FILE_LAYOUTS.get(pathOf((File) source)) : TUNE_LAYOUTS.get((Tune) source);
+    }
+
+    private static void cacheLayout(Object source, PageLayout layout) {
+        if (source instanceof File) {
+            FILE_LAYOUTS.put(pathOf((File) source), layout);
+        } else {
+            TUNE_LAYOUTS.put((Tune) source, layout);
+        }
+    }
+
+    /**
+     * @return Returns the canonical path of the file, or its absolute path
+     * if it can't be resolved
+     */
+    private static String pathOf(File file) {
+        try {
+            return file.getCanonicalPath();
+        } catch (IOException ex) {
+            return file.getAbsolutePath();
+        }
+    }
+
+    private static Tune load(Object source) throws IOException {
+        return source instanceof File ? TuneLoader.load((File) source) : (Tune) source;
+    }
+
+    private static JScoreComponent engrave(Tune tune) {
+        JScoreComponent score = new JScoreComponent();
+        ScoreSettings.apply(score.getTemplate());
+        score.setTune(tune);
+        return score;
+    }
+
+    private static ExecutorService worker(final String name, final int priority) {
+        return Executors.newSingleThreadExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, name);
+                t.setDaemon(true);
+                t.setPriority(priority);
+                return t;
+            }
+        });
+    }
+
+    private void fireChange() {
+        SwingUtilities.invokeLater(new Runnable() {
+            public void run() {
+                ChangeEvent e = new ChangeEvent(ScoreBook.this);
+                for (ChangeListener listener : new ArrayList<ChangeListener>(listeners)) {
+                    listener.stateChanged(e);
+                }
+            }
+        });
+    }
+}
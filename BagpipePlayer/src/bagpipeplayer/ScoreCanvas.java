@@ -0,0 +1,116 @@
+package bagpipeplayer;
+
+import abc.notation.MusicElement;
+import abc.notation.Tune;
+import abc.ui.swing.JScoreComponent;
+import abc.ui.swing.JScoreElement;
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Score component which can highlight a region (e.g. the note being played)
+ * on top of the engraved score. The score itself is drawn from abc4j's
+ * buffered image, so moving the highlight only repaints the old and new region.
+ * <p>
+ * Clicking a note selects its bar, shift-clicking another note extends the
+ * selection to that note's bar.
+ */
+public class ScoreCanvas extends JScoreComponent {
+
+    private static final Color HIGHLIGHT_COLOR = new Color(255, 140, 0, 90);
+
+    private Rectangle highlight;
+    private Tune tune;
+    private MusicElement selectionStart;
+    private MusicElement selectionEnd;
+
+    public ScoreCanvas() {
+        addMouseListener(new MouseAdapter() {
+            @Override
+            public void mousePressed(MouseEvent e) {
+                select(e.getPoint(), e.isShiftDown());
+            }
+        });
+    }
+
+    @Override
+    public void setTune(Tune tune) {
+        this.tune = tune;
+        selectionStart = null;
+        selectionEnd = null;
+        super.setTune(tune);
+    }
+
+    /**
+     * Moves the highlight, repainting only the area it left and the area it covers now.
+     * @param bounds region to highlight, null to remove the highlight
+     */
+    public void setHighlight(Rectangle bounds) {
+        if (highlight != null) repaint(highlight);
+        highlight = bounds;
+        if (highlight != null) repaint(highlight);
+    }
+
+    /**
+     * @return Returns the highlighted region or null
+     */
+    public Rectangle getHighlight() {
+        return highlight;
+    }
+
+    @Override
+    public void paint(Graphics g) {
+        super.paint(g);
+        Rectangle clip = g.getClipBounds();
+        if (highlight != null && (clip == null || highlight.intersects(clip))) {
+            g.setColor(HIGHLIGHT_COLOR);
+            g.fillRect(highlight.x, highlight.y, highlight.width, highlight.height);
+        }
+    }
+
+    /**
+     * @return Returns an element in the first selected bar or null if nothing is selected
+     */
+    public MusicElement getSelectionStart() {
+        return selectionStart;
+    }
+
+    /**
+     * @return Returns an element in the last selected bar or null if nothing is selected
+     */
+    public MusicElement getSelectionEnd() {
+        return selectionEnd;
+    }
+
+    private void select(Point point, boolean extend) {
+        if (tune == null) return;
+        JScoreElement clicked = getScoreElementAt(point);
+        MusicElement element = clicked == null ? null : clicked.getMusicElement();
+        if (element == null || PracticeLoop.isBarLine(element)) {
+            selectionStart = null;
+            selectionEnd = null;
+        } else if (extend && selectionStart != null) {
+            selectionEnd = element;
+        } else {
+            selectionStart = element;
+            selectionEnd = element;
+        }
+        if (selectionStart == null) {
+            setSelectedItem((MusicElement) null);
+        } else {
+            List<JScoreElement> selected = new ArrayList<JScoreElement>();
+            for (MusicElement e : PracticeLoop.barsBetween(tune.getMusicForGraphicalRendition().getFirstVoice(),
+                    selectionStart, selectionEnd)) {
+                JScoreElement rendition = getRenditionElementFor(e);
+                if (rendition != null) selected.add(rendition);
+            }
+            setSelectedItems(selected);
+        }
+    }
+}
@@ -0,0 +1,414 @@
+package bagpipeplayer;
+
+import abc.notation.Tune;
+import abc.notation.Voice;
+import abc.ui.scoretemplates.DefaultScoreTemplate;
+import abc.ui.swing.JScoreComponent;
+import abc.ui.swing.ScoreTemplate;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.Shape;
+import java.awt.geom.PathIterator;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import javax.imageio.ImageIO;
+
+/**
+ * Renders tunes to PNG, SVG or PDF without a display, using the same score
+ * settings as the player window. SVG and PDF are vector graphics: the score
+ * is drawn on a {@link ShapeRecorder} and written as filled outlines, and a
+ * PDF is broken into A4 pages between staff lines like a printed score.
+ * <p>
+ * Tunes are engraved in parallel on a fixed size pool. abc4j caches glyph
+ * metrics in its score template without any locking, so every worker thread
+ * owns one template (and score component) which is set up once and then
+ * reused for all the tunes that thread renders.
+ */
+public class ScoreExporter {
+
+    /**
+     * Output formats
+     */
+    public enum Format {
+        PNG, SVG, PDF;
+
+        /**
+         * @return Returns the file extension including the dot
+         */
+        public String extension() {
+            return "." + name().toLowerCase();
+        }
+    }
+
+    /**
+     * A4 in PDF points (1/72 inch)
+     */
+    private static final float PAGE_WIDTH = 595, PAGE_HEIGHT = 842, PAGE_MARGIN = 36;
+
+    private final ScoreTemplate prototype;
+    private final ExecutorService pool;
+    private final ThreadLocal<JScoreComponent> components = new ThreadLocal<JScoreComponent>() {
+        @Override
+        protected JScoreComponent initialValue() {
+            JScoreComponent component = new JScoreComponent();
+            component.setTemplate((ScoreTemplate) prototype.clone());
+            return component;
+        }
+    };
+
+    /**
+     * @param threads number of tunes rendered at the same time
+     */
+    public ScoreExporter(int threads) {
+        prototype = new DefaultScoreTemplate();
+        ScoreSettings.apply(prototype);
+        pool = Executors.newFixedThreadPool(threads);
+    }
+
+    /**
+     * Exports every file into the output directory, named after the source file.
+     * Files that can't be read or rendered are reported on System.err and skipped.
+     * @param files ABC or BWW files
+     * @param outputDirectory where to put the scores
+     * @param format output format
+     * @return Returns the written files
+     * @throws InterruptedException
+     */
+    public List<File> exportAll(List<File> files, final File outputDirectory, final Format format) throws InterruptedException {
+        List<Future<File>> results = new ArrayList<Future<File>>(files.size());
+        for (final File file : files) {
+            results.add(pool.submit(new Callable<File>() {
+                public File call() throws IOException {
+                    String name = file.getName();
+                    int dot = name.lastIndexOf('.');
+                    File out = new File(outputDirectory, (dot > 0 ? name.substring(0, dot) : name) + format.extension());
+                    Tune tune = TuneLoader.load(file);
+                    OutputStream stream = new BufferedOutputStream(new FileOutputStream(out));
+                    try {
+                        export(tune, stream, format);
+                    } finally {
+                        stream.close();
+                    }
+                    return out;
+                }
+            }));
+        }
+
+        List<File> written = new ArrayList<File>(files.size());
+        for (int i = 0; i < results.size(); i++) {
+            try {
+                written.add(results.get(i).get());
+            } catch (ExecutionException ex) {
+                System.err.println(files.get(i).getName() + ": " + ex.getCause().getLocalizedMessage());
+            }
+        }
+        return written;
+    }
+
+    /**
+     * Renders one tune. May be called from any thread.
+     * @param tune the tune to engrave
+     * @param out where to write the score, not closed
+     * @param format output format
+     * @throws IOException
+     */
+    public void export(Tune tune, OutputStream out, Format format) throws IOException {
+        JScoreComponent component = components.get();
+        component.setTune(tune);
+        switch (format) {
+            case PNG: ImageIO.write(render(component), "png", out); break;
+            case SVG: writeSvg(component, out); break;
+            case PDF: writePdf(component, tune.getMusicForGraphicalRendition().getFirstVoice(), out); break;
+        }
+    }
+
+    /**
+     * Stops the worker threads once the pending exports are done.
+     */
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    /**
+     * Draws the engraved score on a white image of its size.
+     */
+    private static BufferedImage render(JScoreComponent component) {
+        Dimension size = component.getPreferredSize();
+        BufferedImage image = new BufferedImage(Math.max(1, size.width), Math.max(1, size.height), BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g.setColor(Color.WHITE);
+        g.fillRect(0, 0, image.getWidth(), image.getHeight());
+        component.drawIn(g);
+        g.dispose();
+        return image;
+    }
+
+    /**
+     * @return Returns the outlines of the engraved score
+     */
+    private static List<ShapeRecorder.Fill> record(JScoreComponent component) {
+        ShapeRecorder g = new ShapeRecorder();
+        component.drawIn(g);
+        g.dispose();
+        return g.getFills();
+    }
+
+    private static void writeSvg(JScoreComponent component, OutputStream out) throws IOException {
+        Dimension size = component.getPreferredSize();
+        Writer w = new OutputStreamWriter(out, "UTF-8");
+        w.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        w.write("<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"" + size.width + "\" height=\"" + size.height
+                + "\" viewBox=\"0 0 " + size.width + " " + size.height + "\">\n");
+        StringBuilder path = new StringBuilder();
+        for (ShapeRecorder.Fill fill : record(component)) {
+            path.setLength(0);
+            path.append("<path fill=\"#").append(Integer.toHexString(fill.color.getRGB() & 0xFFFFFF | 0x1000000).substring(1));
+            if (fill.color.getAlpha() < 255) {
+                path.append("\" fill-opacity=\"");
+                appendNumber(path, fill.color.getAlpha() / 255.0);
+            }
+            if (fill.shape.getPathIterator(null).getWindingRule() == PathIterator.WIND_EVEN_ODD) {
+                path.append("\" fill-rule=\"evenodd");
+            }
+            path.append("\" d=\"");
+            appendPath(path, fill.shape, false);
+            path.append("\"/>\n");
+            w.write(path.toString());
+        }
+        w.write("</svg>\n");
+        w.flush();
+    }
+
+    /**
+     * Writes an A4 PDF with the score broken into pages by a {@link PageLayout},
+     * so staff lines are never split.
+     */
+    private static void writePdf(JScoreComponent component, Voice voice, OutputStream out) throws IOException {
+        double width = PAGE_WIDTH - 2 * PAGE_MARGIN, height = PAGE_HEIGHT - 2 * PAGE_MARGIN;
+        PageLayout layout = PageLayout.of(component, voice, width, height, 0);
+        List<ShapeRecorder.Fill> fills = record(component);
+        double scale = layout.getScale();
+
+        PdfOutput pdf = new PdfOutput(out);
+        int pageCount = layout.getPageCount();
+        // 1 catalog, 2 page tree, then page and content for every page
+        pdf.object(1, "<< /Type /Catalog /Pages 2 0 R >>");
+        StringBuilder kids = new StringBuilder();
+        for (int p = 0; p < pageCount; p++) kids.append(3 + 2 * p).append(" 0 R ");
+        pdf.object(2, "<< /Type /Pages /Count " + pageCount + " /Kids [" + kids + "] >>");
+        StringBuilder content = new StringBuilder();
+        for (int p = 0; p < pageCount; p++) {
+            double top = layout.getTop(p), bottom = layout.getBottom(p);
+            int page = 3 + 2 * p;
+            pdf.object(page, "<< /Type /Page /Parent 2 0 R /MediaBox [0 0 " + PAGE_WIDTH + " " + PAGE_HEIGHT + "]"
+                    + " /Contents " + (page + 1) + " 0 R >>");
+
+            // score coordinates: y downwards from the page's top, clipped to the page
+            content.setLength(0);
+            content.append("q ");
+            appendNumbers(content, scale, 0, 0, -scale, PAGE_MARGIN, PAGE_HEIGHT - PAGE_MARGIN + top * scale);
+            content.append("cm ");
+            appendNumbers(content, 0, top, width / scale, bottom - top);
+            content.append("re W n\n");
+            Color color = Color.BLACK;
+            for (ShapeRecorder.Fill fill : fills) {
+                Rectangle2D bounds = fill.shape.getBounds2D();
+                if (bounds.getMaxY() < top || bounds.getMinY() > bottom) continue;
+                if (!fill.color.equals(color)) {
+                    color = fill.color;
+                    appendNumbers(content, color.getRed() / 255.0, color.getGreen() / 255.0, color.getBlue() / 255.0);
+                    content.append("rg\n");
+                }
+                appendPath(content, fill.shape, true);
+                content.append(fill.shape.getPathIterator(null).getWindingRule() == PathIterator.WIND_EVEN_ODD
+                        ? "f*\n" : "f\n");
+            }
+            content.append("Q\n");
+            pdf.stream(page + 1, "/Filter /FlateDecode ", deflate(content.toString().getBytes("US-ASCII")));
+        }
+        pdf.finish(1);
+    }
+
+    /**
+     * Appends the outline of a shape as SVG path data or PDF path operators.
+     */
+    private static void appendPath(StringBuilder s, Shape shape, boolean pdf) {
+        double[] c = new double[6];
+        double x = 0, y = 0;
+        for (PathIterator it = shape.getPathIterator(null); !it.isDone(); it.next()) {
+            switch (it.currentSegment(c)) {
+                case PathIterator.SEG_MOVETO:
+                    if (!pdf) s.append('M');
+                    appendNumbers(s, c[0], c[1]);
+                    if (pdf) s.append("m ");
+                    x = c[0];
+                    y = c[1];
+                    break;
+                case PathIterator.SEG_LINETO:
+                    if (!pdf) s.append('L');
+                    appendNumbers(s, c[0], c[1]);
+                    if (pdf) s.append("l ");
+                    x = c[0];
+                    y = c[1];
+                    break;
+                case PathIterator.SEG_QUADTO:
+                    if (pdf) {
+                        // PDF has cubic curves only
+                        appendNumbers(s, x + 2 * (c[0] - x) / 3, y + 2 * (c[1] - y) / 3,
+                                c[2] + 2 * (c[0] - c[2]) / 3, c[3] + 2 * (c[1] - c[3]) / 3, c[2], c[3]);
+                        s.append("c ");
+                    } else {
+                        s.append('Q');
+                        appendNumbers(s, c[0], c[1], c[2], c[3]);
+                    }
+                    x = c[2];
+                    y = c[3];
+                    break;
+                case PathIterator.SEG_CUBICTO:
+                    if (!pdf) s.append('C');
+                    appendNumbers(s, c[0], c[1], c[2], c[3], c[4], c[5]);
+                    if (pdf) s.append("c ");
+                    x = c[4];
+                    y = c[5];
+                    break;
+                case PathIterator.SEG_CLOSE:
+                    s.append(pdf ? "h " : "Z");
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Appends numbers rounded to two decimals, each followed by a space.
+     * Neither SVG nor PDF accept exponents or locale specific digits.
+     */
+    private static void appendNumbers(StringBuilder s, double... values) {
+        for (double v : values) {
+            long hundredths = Math.round(v * 100);
+            if (hundredths < 0) {
+                s.append('-');
+                hundredths = -hundredths;
+            }
+            s.append(hundredths / 100);
+            int fraction = (int) (hundredths % 100);
+            if (fraction != 0) {
+                s.append('.').append(fraction / 10);
+                if (fraction % 10 != 0) s.append(fraction % 10);
+            }
+            s.append(' ');
+        }
+    }
+
+    private static void appendNumber(StringBuilder s, double value) {
+        appendNumbers(s, value);
+        s.setLength(s.length() - 1);
+    }
+
+    private static byte[] deflate(byte[] data) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DeflaterOutputStream deflater = new DeflaterOutputStream(bytes, new Deflater(Deflater.BEST_SPEED));
+        deflater.write(data);
+        deflater.close();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Just enough PDF to hold numbered objects and streams plus the
+     * cross reference table pointing at them.
+     */
+    private static class PdfOutput {
+        private final OutputStream out;
+        private final List<Long> offsets = new ArrayList<Long>();
+        private long position;
+
+        PdfOutput(OutputStream out) throws IOException {
+            this.out = out;
+            write("%PDF-1.4\n");
+        }
+
+        void object(int number, String dictionary) throws IOException {
+            begin(number);
+            write(dictionary + "\nendobj\n");
+        }
+
+        void stream(int number, String dictionary, byte[] data) throws IOException {
+            begin(number);
+            write("<< " + dictionary + "/Length " + data.length + " >>\nstream\n");
+            out.write(data);
+            position += data.length;
+            write("\nendstream\nendobj\n");
+        }
+
+        void finish(int root) throws IOException {
+            long xref = position;
+            write("xref\n0 " + (offsets.size() + 1) + "\n0000000000 65535 f \n");
+            for (Long offset : offsets) {
+                write(String.format(Locale.ROOT, "%010d 00000 n \n", offset));
+            }
+            write("trailer\n<< /Size " + (offsets.size() + 1) + " /Root " + root + " 0 R >>\nstartxref\n" + xref + "\n%%EOF\n");
+            out.flush();
+        }
+
+        private void begin(int number) throws IOException {
+            while (offsets.size() < number) offsets.add(Long.valueOf(0));
+            offsets.set(number - 1, Long.valueOf(position));
+            write(number + " 0 obj\n");
+        }
+
+        private void write(String s) throws IOException {
+            byte[] bytes = s.getBytes("US-ASCII");
+            out.write(bytes);
+            position += bytes.length;
+        }
+    }
+
+    /**
+     * Command line entry point:
+     * ScoreExporter png|svg|pdf outputDirectory file...
+     * @param args
+     * @throws InterruptedException
+     */
+    public static void main(String[] args) throws InterruptedException {
+        if (args.length < 3) {
+            System.err.println("usage: ScoreExporter png|svg|pdf outputDirectory file...");
+            System.exit(1);
+        }
+        if (System.getProperty("java.awt.headless") == null) {
+            System.setProperty("java.awt.headless", "true");
+        }
+        Format format = Format.valueOf(args[0].toUpperCase());
+        File outputDirectory = new File(args[1]);
+        outputDirectory.mkdirs();
+        List<File> files = new ArrayList<File>();
+        for (int i = 2; i < args.length; i++) files.add(new File(args[i]));
+
+        ScoreExporter exporter = new ScoreExporter(Runtime.getRuntime().availableProcessors());
+        try {
+            List<File> written = exporter.exportAll(files, outputDirectory, format);
+            System.out.println(written.size() + " of " + files.size() + " scores exported");
+        } finally {
+            exporter.shutdown();
+        }
+    }
+}
@@ -0,0 +1,332 @@
+package bagpipeplayer;
+
+import abc.midi.BasicPositionableMidiConverter;
+import abc.midi.MidiConverterInterface;
+import abc.notation.Tune;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.ArrayList;
+import java.util.List;
+import javax.sound.midi.Instrument;
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.MidiUnavailableException;
+import javax.sound.midi.Receiver;
+import javax.sound.midi.Sequence;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.Soundbank;
+import javax.sound.midi.Synthesizer;
+import javax.swing.Timer;
+
+/**
+ * Plays tunes and reports the playback position in MIDI ticks.
+ * <p>
+ * abc4j's TunePlayer keeps its sequencer to itself and only reports the
+ * parts of the ABC text being played, which doesn't work for tunes converted
+ * from BWW. This player uses the same abc4j MIDI converter but schedules the
+ * events itself (see {@link EventScheduler}), so listeners get the current
+ * tick on every position callback and a queued tune starts exactly where the
+ * one before ends. All callbacks happen on the event dispatch thread.
+ * <p>
+ * Tempo and transposition can be changed while a tune plays. Neither touches
+ * the tune or its events: the tempo is a factor on the scheduler's clock and
+ * the transposition is applied to the note messages on their way to the
+ * synthesizer, so a change is heard from the next note on without a gap.
+ */
+public class ScorePlayer {
+
+    /**
+     * Receives the playback position while tunes play.
+     */
+    public interface Listener {
+
+        /**
+         * Called when a tune (or its count-in) starts, before its first position.
+         * @param item the tune now playing
+         */
+        void tuneStarted(PlaybackItem item);
+
+        /**
+         * @param tick position in the tune playing, negative during the count-in
+         */
+        void positionChanged(long tick);
+
+        /**
+         * Called once when the last tune ended or playback was stopped.
+         */
+        void playbackStopped();
+    }
+
+    /**
+     * Milliseconds between two position callbacks
+     */
+    private static final int POSITION_INTERVAL = 20;
+    /**
+     * General MIDI program number of the bagpipe
+     */
+    private static final int BAGPIPE_PROGRAM = 109;
+
+    /**
+     * General MIDI percussion channel, drum keys aren't transposed
+     */
+    static final int PERCUSSION_CHANNEL = 9;
+
+    /**
+     * A converter per thread, so the parts of a band score can be converted in parallel
+     */
+    private final ThreadLocal<MidiConverterInterface> converters = new ThreadLocal<MidiConverterInterface>() {
+        @Override
+        protected MidiConverterInterface initialValue() {
+            MidiConverterInterface converter = new BasicPositionableMidiConverter();
+            try {
+                if (instrument != null) converter.setInstrument(instrument);
+            } catch (MidiUnavailableException ex) {
+                System.err.println(ex.getLocalizedMessage());
+            }
+            return converter;
+        }
+    };
+    private final Instrument instrument;
+    private final List<Listener> listeners = new ArrayList<Listener>();
+    private final Timer positionTimer;
+    private final Transposer transposer = new Transposer();
+    private float tempoFactor = 1;
+    private Synthesizer synthesizer;
+    private EventScheduler scheduler;
+    private Thread schedulerThread;
+    private PlaybackItem item;
+    private long lastTick;
+
+    public ScorePlayer() {
+        /*
+         * Without an instrument the converter opens a synthesizer (and an audio
+         * line) for every conversion just to pick the first instrument there is.
+         */
+        Instrument bagpipe = null;
+        try {
+            Soundbank soundbank = MidiSystem.getSynthesizer().getDefaultSoundbank();
+            if (soundbank != null) {
+                for (Instrument instrument : soundbank.getInstruments()) {
+                    if (instrument.getPatch().getBank() == 0 && instrument.getPatch().getProgram() == BAGPIPE_PROGRAM) {
+                        bagpipe = instrument;
+                        break;
+                    }
+                }
+            }
+        } catch (MidiUnavailableException ex) {
+            System.err.println(ex.getLocalizedMessage());
+        }
+        instrument = bagpipe;
+        positionTimer = new Timer(POSITION_INTERVAL, new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                firePosition();
+            }
+        });
+    }
+
+    /**
+     * Converts a tune to the events the player (and a {@link PlaybackCursor})
+     * uses. May be called from any thread.
+     * @param tune the tune
+     * @return Returns the events
+     */
+    public MidiEvents toEvents(Tune tune) {
+        Sequence sequence = converters.get().toMidiSequence(tune);
+        return MidiEvents.fromSequence(sequence);
+    }
+
+    /**
+     * Starts playing a tune, stopping whatever played before.
+     * @param item the tune and its events
+     * @throws MidiUnavailableException if there is no synthesizer
+     */
+    public void play(PlaybackItem item) throws MidiUnavailableException {
+        stop();
+        if (synthesizer == null) {
+            open();
+        }
+        scheduler = new EventScheduler(synthesizer, transposer, item);
+        scheduler.setTempoFactor(tempoFactor);
+        schedulerThread = new Thread(scheduler, "EventScheduler");
+        schedulerThread.setDaemon(true);
+        schedulerThread.setPriority(Thread.MAX_PRIORITY);
+        this.item = null;
+        lastTick = Long.MIN_VALUE;
+        schedulerThread.start();
+        positionTimer.start();
+    }
+
+    /**
+     * Queues a tune to start right after the one playing. Only one tune can
+     * wait at a time; the next one can be queued once it started.
+     * @param item the tune and its events
+     * @return Returns false if nothing plays or a tune is already waiting
+     */
+    public boolean queue(PlaybackItem item) {
+        return isPlaying() && scheduler.offer(item);
+    }
+
+    /**
+     * Stops playback and notifies the listeners. Does nothing if nothing plays.
+     */
+    public void stop() {
+        if (!positionTimer.isRunning()) return;
+        positionTimer.stop();
+        scheduler.stop();
+        scheduler = null;
+        schedulerThread = null;
+        item = null;
+        for (Listener l : new ArrayList<Listener>(listeners)) {
+            l.playbackStopped();
+        }
+    }
+
+    /**
+     * @return Returns true while a tune plays
+     */
+    public boolean isPlaying() {
+        return positionTimer.isRunning();
+    }
+
+    /**
+     * @return Returns the tune playing or null
+     */
+    public PlaybackItem getItem() {
+        return item;
+    }
+
+    public void addListener(Listener l) {
+        listeners.add(l);
+    }
+
+    public void removeListener(Listener l) {
+        listeners.remove(l);
+    }
+
+    /**
+     * Changes the playback speed, immediately if a tune is playing.
+     * @param factor 1 for the tune's own tempo, 0.5 for half speed etc.
+     */
+    public void setTempoFactor(float factor) {
+        tempoFactor = factor;
+        if (scheduler != null) scheduler.setTempoFactor(factor);
+    }
+
+    /**
+     * @return Returns the playback speed relative to the tune's tempo
+     */
+    public float getTempoFactor() {
+        return tempoFactor;
+    }
+
+    /**
+     * Transposes everything played from now on, e.g. to match a practice
+     * chanter which is pitched lower than the pipes.
+     * @param semitones offset in semitones, 0 for none
+     */
+    public void setTranspose(int semitones) {
+        transposer.offset = semitones;
+    }
+
+    /**
+     * @return Returns the transposition in semitones
+     */
+    public int getTranspose() {
+        return transposer.offset;
+    }
+
+    /**
+     * Stops playback and releases the synthesizer.
+     */
+    public void close() {
+        stop();
+        if (synthesizer != null) {
+            synthesizer.close();
+            synthesizer = null;
+        }
+    }
+
+    /**
+     * Opens the synthesizer the scheduler plays through the transposer.
+     */
+    private void open() throws MidiUnavailableException {
+        Synthesizer s = MidiSystem.getSynthesizer();
+        s.open();
+        try {
+            transposer.target = s.getReceiver();
+        } catch (MidiUnavailableException ex) {
+            s.close();
+            throw ex;
+        }
+        synthesizer = s;
+    }
+
+    private void firePosition() {
+        if (!schedulerThread.isAlive()) {
+            stop();
+            return;
+        }
+        PlaybackItem current = scheduler.getItem();
+        if (current == null) return;
+        if (current != item) {
+            item = current;
+            lastTick = Long.MIN_VALUE;
+            for (int i = 0; i < listeners.size(); i++) {
+                listeners.get(i).tuneStarted(current);
+            }
+        }
+        long tick = scheduler.getTick();
+        if (tick == lastTick) return;
+        lastTick = tick;
+        for (int i = 0; i < listeners.size(); i++) {
+            listeners.get(i).positionChanged(tick);
+        }
+    }
+
+    /**
+     * Shifts note messages by the current offset. Every note off goes to the
+     * key its note on was sent to, so changing the offset while notes sound
+     * can't leave hanging notes. Drums stay on their keys.
+     */
+    private static class Transposer implements Receiver {
+        volatile int offset;
+        Receiver target;
+        /**
+         * Key sent for each channel and key played, plus one (0 = not sounding)
+         */
+        private final short[] sounding = new short[16 * 128];
+
+        public void send(MidiMessage message, long timeStamp) {
+            if (message instanceof ShortMessage) {
+                ShortMessage sm = (ShortMessage) message;
+                int command = sm.getCommand();
+                if ((command == ShortMessage.NOTE_ON || command == ShortMessage.NOTE_OFF)
+                        && sm.getChannel() != PERCUSSION_CHANNEL) {
+                    int slot = sm.getChannel() * 128 + sm.getData1();
+                    int key;
+                    if (command == ShortMessage.NOTE_ON && sm.getData2() > 0) {
+                        key = Math.max(0, Math.min(127, sm.getData1() + offset));
+                        sounding[slot] = (short) (key + 1);
+                    } else {
+                        key = sounding[slot] > 0 ? sounding[slot] - 1 : sm.getData1();
+                        sounding[slot] = 0;
+                    }
+                    if (key != sm.getData1()) {
+                        try {
+                            ShortMessage shifted = new ShortMessage();
+                            shifted.setMessage(command, sm.getChannel(), key, sm.getData2());
+                            message = shifted;
+                        } catch (InvalidMidiDataException ex) {
+                            // can't happen, the key is in range
+                        }
+                    }
+                }
+            }
+            target.send(message, timeStamp);
+        }
+
+        public void close() {
+        }
+    }
+}
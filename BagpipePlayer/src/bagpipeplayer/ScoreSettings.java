@@ -0,0 +1,29 @@
+package bagpipeplayer;
+
+import abc.ui.scoretemplates.ScoreAttribute;
+import abc.ui.swing.JTune;
+import abc.ui.swing.ScoreTemplate;
+
+/**
+ * The score layout every part of the player uses, so a score looks the same
+ * on screen as it does when exported or printed.
+ */
+public final class ScoreSettings {
+
+    /**
+     * Size of the notation in the score template
+     */
+    public static final float NOTATION_SIZE = 50;
+
+    private ScoreSettings() {
+    }
+
+    /**
+     * Applies the bagpipe score settings (stems down, large notation) to a template.
+     * @param template the template to configure
+     */
+    public static void apply(ScoreTemplate template) {
+        template.setAttribute(ScoreAttribute.NOTE_STEM_POLICY, JTune.STEMS_DOWN);
+        template.setAttributeSize(ScoreAttribute.NOTATION_SIZE, NOTATION_SIZE);
+    }
+}
@@ -0,0 +1,243 @@
+/*
+ * SetBuilderDialog.java
+ */
+
+package bagpipeplayer;
+
+import java.awt.Frame;
+import java.awt.print.PrinterJob;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import javax.swing.DefaultListModel;
+import javax.swing.JFileChooser;
+import org.jdesktop.application.Action;
+
+/**
+ * Puts tunes together into a set and plays them one after the other
+ */
+// the project builds for Java 6, where JList and DefaultListModel (also in
+// the generated code) have no type parameters yet
+@SuppressWarnings({"rawtypes", "unchecked"})
+public class SetBuilderDialog extends javax.swing.JDialog {
+
+    private final SetPlayer setPlayer;
+    private final DefaultListModel tunes = new DefaultListModel();
+
+    /**
+     * Shows the set builder
+     * @param parent
+     * @param setPlayer plays the set
+     */
+    public SetBuilderDialog(java.awt.Frame parent, SetPlayer setPlayer) {
+        super(parent);
+        this.setPlayer = setPlayer;
+        initComponents();
+        tuneList.setModel(tunes);
+        getRootPane().setDefaultButton(playButton);
+    }
+
+    /**
+     * Adds tunes to the end of the set
+     */
+    @Action public void addTunes() {
+        if (fileChooser.showOpenDialog(this) == JFileChooser.APPROVE_OPTION) {
+            for (File f : fileChooser.getSelectedFiles()) {
+                tunes.addElement(f);
+            }
+        }
+    }
+
+    /**
+     * Removes the selected tunes from the set
+     */
+    @Action public void removeTunes() {
+        int[] selected = tuneList.getSelectedIndices();
+        for (int i = selected.length - 1; i >= 0; i--) {
+            tunes.remove(selected[i]);
+        }
+    }
+
+    /**
+     * Moves the selected tune one place up
+     */
+    @Action public void moveUp() {
+        int i = tuneList.getSelectedIndex();
+        if (i > 0) {
+            tunes.add(i - 1, tunes.remove(i));
+            tuneList.setSelectedIndex(i - 1);
+        }
+    }
+
+    /**
+     * Moves the selected tune one place down
+     */
+    @Action public void moveDown() {
+        int i = tuneList.getSelectedIndex();
+        if (i >= 0 && i < tunes.size() - 1) {
+            tunes.add(i + 1, tunes.remove(i));
+            tuneList.setSelectedIndex(i + 1);
+        }
+    }
+
+    /**
+     * Plays the set from the first tune
+     */
+    @Action public void playSet() {
+        List<File> files = new ArrayList<File>();
+        for (int i = 0; i < tunes.size(); i++) {
+            files.add((File) tunes.get(i));
+        }
+        if (!files.isEmpty()) {
+            setPlayer.play(files, (Integer) countInSpinner.getValue());
+        }
+    }
+
+    /**
+     * Shows the set as it will be printed, every tune on new pages
+     */
+    @Action public void printSet() {
+        List<File> files = new ArrayList<File>();
+        for (int i = 0; i < tunes.size(); i++) {
+            files.add((File) tunes.get(i));
+        }
+        if (files.isEmpty()) return;
+        PrinterJob job = PrinterJob.getPrinterJob();
+        PrintPreviewDialog preview = new PrintPreviewDialog((Frame) getOwner(), new ScoreBook(files, job.defaultPage()), job);
+        preview.setLocationRelativeTo(this);
+        preview.setVisible(true);
+    }
+
+    /**
+     * Stops the set
+     */
+    @Action public void stopSet() {
+        setPlayer.stop();
+    }
+
+    /** This method is called from within the constructor to
+     * initialize the form.
+     * WARNING: Do NOT modify this code. The content of this method is
+     * always regenerated by the Form Editor.
+     */
+    // <editor-fold defaultstate="collapsed" desc="Generated Code">//GEN-BEGIN:initComponents
+    private void initComponents() {
+
+        fileChooser = new javax.swing.JFileChooser();
+        javax.swing.JScrollPane tuneScrollPane = new javax.swing.JScrollPane();
+        tuneList = new javax.swing.JList();
+        javax.swing.JButton addButton = new javax.swing.JButton();
+        javax.swing.JButton removeButton = new javax.swing.JButton();
+        javax.swing.JButton upButton = new javax.swing.JButton();
+        javax.swing.JButton downButton = new javax.swing.JButton();
+        javax.swing.JLabel countInLabel = new javax.swing.JLabel();
+        countInSpinner = new javax.swing.JSpinner();
+        playButton = new javax.swing.JButton();
+        javax.swing.JButton stopButton = new javax.swing.JButton();
+        javax.swing.JButton printButton = new javax.swing.JButton();
+
+        fileChooser.setFileFilter(new CustomFileFilter());
+        fileChooser.setMultiSelectionEnabled(true);
+        fileChooser.setName("fileChooser"); // NOI18N
+
+        setDefaultCloseOperation(javax.swing.WindowConstants.HIDE_ON_CLOSE);
+        org.jdesktop.application.ResourceMap resourceMap = org.jdesktop.application.Application.getInstance(bagpipeplayer.BagpipePlayerApp.class).getContext().getResourceMap(SetBuilderDialog.class);
+        setTitle(resourceMap.getString("title")); // NOI18N
+        setName("setBuilder"); // NOI18N
+
+        tuneScrollPane.setName("tuneScrollPane"); // NOI18N
+
+        tuneList.setName("tuneList"); // NOI18N
+        tuneScrollPane.setViewportView(tuneList);
+
+        javax.swing.ActionMap actionMap = org.jdesktop.application.Application.getInstance(bagpipeplayer.BagpipePlayerApp.class).getContext().getActionMap(SetBuilderDialog.class, this);
+        addButton.setAction(actionMap.get("addTunes")); // NOI18N
+        addButton.setName("addButton"); // NOI18N
+
+        removeButton.setAction(actionMap.get("removeTunes")); // NOI18N
+        removeButton.setName("removeButton"); // NOI18N
+
+        upButton.setAction(actionMap.get("moveUp")); // NOI18N
+        upButton.setName("upButton"); // NOI18N
+
+        downButton.setAction(actionMap.get("moveDown")); // NOI18N
+        downButton.setName("downButton"); // NOI18N
+
+        countInLabel.setText(resourceMap.getString("countInLabel.text")); // NOI18N
+        countInLabel.setName("countInLabel"); // NOI18N
+
+        countInSpinner.setModel(new javax.swing.SpinnerNumberModel(0, 0, 8, 1));
+        countInSpinner.setToolTipText(resourceMap.getString("countInSpinner.toolTipText")); // NOI18N
+        countInSpinner.setName("countInSpinner"); // NOI18N
+
+        playButton.setAction(actionMap.get("playSet")); // NOI18N
+        playButton.setName("playButton"); // NOI18N
+
+        stopButton.setAction(actionMap.get("stopSet")); // NOI18N
+        stopButton.setName("stopButton"); // NOI18N
+
+        printButton.setAction(actionMap.get("printSet")); // NOI18N
+        printButton.setName("printButton"); // NOI18N
+
+        javax.swing.GroupLayout layout = new javax.swing.GroupLayout(getContentPane());
+        getContentPane().setLayout(layout);
+        layout.setHorizontalGroup(
+            layout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
+            .addGroup(layout.createSequentialGroup()
+                .addContainerGap()
+                .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
+                    .addGroup(layout.createSequentialGroup()
+                        .addComponent(tuneScrollPane, javax.swing.GroupLayout.DEFAULT_SIZE, 300, Short.MAX_VALUE)
+                        .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                        .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING, false)
+                            .addComponent(addButton, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE)
+                            .addComponent(removeButton, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE)
+                            .addComponent(upButton, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE)
+                            .addComponent(downButton, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE)
+                            .addComponent(printButton, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE)))
+                    .addGroup(layout.createSequentialGroup()
+                        .addComponent(countInLabel)
+                        .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                        .addComponent(countInSpinner, javax.swing.GroupLayout.PREFERRED_SIZE, 50, javax.swing.GroupLayout.PREFERRED_SIZE)
+                        .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED, javax.swing.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE)
+                        .addComponent(playButton)
+                        .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                        .addComponent(stopButton)))
+                .addContainerGap())
+        );
+        layout.setVerticalGroup(
+            layout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
+            .addGroup(layout.createSequentialGroup()
+                .addContainerGap()
+                .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
+                    .addComponent(tuneScrollPane, javax.swing.GroupLayout.DEFAULT_SIZE, 200, Short.MAX_VALUE)
+                    .addGroup(layout.createSequentialGroup()
+                        .addComponent(addButton)
+                        .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                        .addComponent(removeButton)
+                        .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.UNRELATED)
+                        .addComponent(upButton)
+                        .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                        .addComponent(downButton)
+                        .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.UNRELATED)
+                        .addComponent(printButton)))
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
+                    .addComponent(countInLabel)
+                    .addComponent(countInSpinner, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                    .addComponent(playButton)
+                    .addComponent(stopButton))
+                .addContainerGap())
+        );
+
+        pack();
+    }// </editor-fold>//GEN-END:initComponents
+
+    // Variables declaration - do not modify//GEN-BEGIN:variables
+    private javax.swing.JSpinner countInSpinner;
+    private javax.swing.JFileChooser fileChooser;
+    private javax.swing.JButton playButton;
+    private javax.swing.JList tuneList;
+    // End of variables declaration//GEN-END:variables
+
+}
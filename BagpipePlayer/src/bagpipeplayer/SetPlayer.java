@@ -0,0 +1,146 @@
+package bagpipeplayer;
+
+import abc.notation.Tune;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import javax.sound.midi.MidiUnavailableException;
+import javax.swing.SwingUtilities;
+
+/**
+ * Plays a set (medley) of tunes without gaps.
+ * <p>
+ * Tunes are loaded one at a time on a background thread: the first one
+ * before playback starts, every following one as soon as the tune before it
+ * started, and queued in the {@link ScorePlayer} so it starts on the exact
+ * tick the tune before ends. Only the tune playing and the next one are in
+ * memory. Files that can't be loaded are reported on System.err and skipped.
+ * The count-in is played before the first tune only.
+ */
+public class SetPlayer implements ScorePlayer.Listener {
+
+    private final ScorePlayer player;
+    private final ExecutorService loader = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "SetPlayer");
+            t.setDaemon(true);
+            return t;
+        }
+    });
+    private List<File> files = new ArrayList<File>();
+    /**
+     * Incremented whenever a set starts or ends, so loads for an old set are dropped
+     */
+    private int generation;
+    private boolean playing;
+    private PlaybackItem queued;
+    private int nextIndex;
+
+    /**
+     * @param player the player to play the sets with
+     */
+    public SetPlayer(ScorePlayer player) {
+        this.player = player;
+        player.addListener(this);
+    }
+
+    /**
+     * Starts playing a set, stopping whatever played before.
+     * @param files the tunes in playing order
+     * @param countIn beats clicked before the first tune
+     */
+    public void play(List<File> files, int countIn) {
+        stop();
+        this.files = new ArrayList<File>(files);
+        load(generation, 0, countIn);
+    }
+
+    /**
+     * Stops the set.
+     */
+    public void stop() {
+        generation++;
+        playing = false;
+        queued = null;
+        player.stop();
+    }
+
+    /**
+     * @return Returns true while a set is loading or playing
+     */
+    public boolean isActive() {
+        return playing || queued != null;
+    }
+
+    public void tuneStarted(PlaybackItem item) {
+        if (item == queued) {
+            playing = true;
+            queued = null;
+            load(generation, nextIndex, 0);
+        } else if (playing) {
+            // something else is played now
+            generation++;
+            playing = false;
+        }
+    }
+
+    public void positionChanged(long tick) {
+    }
+
+    public void playbackStopped() {
+        if (playing) {
+            generation++;
+            playing = false;
+            queued = null;
+        }
+    }
+
+    /**
+     * Loads the tune at the index in the background and, back on the event
+     * dispatch thread, plays or queues it.
+     */
+    private void load(final int set, final int index, final int countIn) {
+        if (index >= files.size()) return;
+        final File file = files.get(index);
+        loader.execute(new Runnable() {
+            public void run() {
+                PlaybackItem item = null;
+                try {
+                    Tune tune = TuneLoader.load(file);
+                    item = new PlaybackItem(tune, file, player.toEvents(tune), countIn);
+                } catch (IOException ex) {
+                    System.err.println(file.getName() + ": " + ex.getLocalizedMessage());
+                }
+                final PlaybackItem loaded = item;
+                SwingUtilities.invokeLater(new Runnable() {
+                    public void run() {
+                        loaded(set, index, countIn, loaded);
+                    }
+                });
+            }
+        });
+    }
+
+    private void loaded(int set, int index, int countIn, PlaybackItem item) {
+        if (set != generation) return;
+        nextIndex = index + 1;
+        if (item == null) {
+            load(set, nextIndex, countIn);
+        } else if (!playing) {
+            queued = item;
+            try {
+                player.play(item);
+            } catch (MidiUnavailableException ex) {
+                System.err.println(ex.getLocalizedMessage());
+                queued = null;
+            }
+        } else {
+            queued = item;
+            if (!player.queue(item)) queued = null;
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package bagpipeplayer;
+
+import abc.notation.Tune;
+import abc.notation.Voice;
+import java.awt.Dimension;
+import java.io.File;
+import java.io.IOException;
+import javax.swing.JComponent;
+import javax.swing.JScrollPane;
+
+/**
+ * A tune open in a tab of the main window.
+ * <p>
+ * The tab's component stays, but what it shows can be dropped to save
+ * memory: first the rendered score, then the parsed tune. A dropped tune
+ * isn't kept at all, only its {@link CompactTune}, which is what
+ * {@link #tuneSize()} counts; it is built again from that or, if that isn't
+ * exact, loaded again from its file. Both are rebuilt by {@link #getCanvas()}.
+ */
+class TuneDocument {
+
+    /**
+     * Rough heap size of a parsed music element (bytes)
+     */
+    private static final int ELEMENT_SIZE = 200;
+    /**
+     * Rough heap size of the layout of a music element (bytes)
+     */
+    private static final int RENDITION_SIZE = 300;
+
+    private final File source;
+    private final String title;
+    private final JScrollPane view = new JScrollPane();
+    private Tune tune;
+    private CompactTune compact;
+    private ScoreCanvas canvas;
+    private int elements;
+    long lastShown;
+
+    /**
+     * @param source the BWW or ABC file, loaded when first shown
+     */
+    TuneDocument(File source) {
+        this.source = source;
+        this.title = source.getName();
+    }
+
+    /**
+     * @param tune a tune which has no file, it is only dropped to its compact form
+     * @param title the tab title
+     */
+    TuneDocument(Tune tune, String title) {
+        this.source = null;
+        this.title = title;
+        setTune(tune);
+    }
+
+    /**
+     * @return Returns the file or null if the tune has none
+     */
+    File getSource() {
+        return source;
+    }
+
+    String getTitle() {
+        return title;
+    }
+
+    /**
+     * @return Returns the component to put in the tab
+     */
+    JComponent getView() {
+        return view;
+    }
+
+    /**
+     * @return Returns the tune, loading it if it was dropped
+     * @throws IOException if the file can't be read
+     */
+    Tune getTune() throws IOException {
+        if (tune == null) {
+            setTune(compact != null ? compact.toTune() : TuneLoader.load(source));
+        }
+        return tune;
+    }
+
+    /**
+     * @return Returns the tune or null if it isn't in memory
+     */
+    Tune peekTune() {
+        return tune;
+    }
+
+    /**
+     * Shows another copy of the tune, e.g. the one loaded again from the
+     * file to be played, so the playing notes can be highlighted.
+     * @param t the tune
+     */
+    void useTune(Tune t) {
+        if (t == tune) return;
+        dropRendering();
+        setTune(t);
+    }
+
+    /**
+     * @return Returns the score showing the tune, rendering it if it was dropped
+     * @throws IOException if the file can't be read
+     */
+    ScoreCanvas getCanvas() throws IOException {
+        if (canvas == null) {
+            Tune t = getTune();
+            ScoreCanvas c = new ScoreCanvas();
+            ScoreSettings.apply(c.getTemplate());
+            c.setTune(t);
+            view.setViewportView(c);
+            view.getViewport().setBackground(c.getBackground());
+            canvas = c;
+        }
+        return canvas;
+    }
+
+    /**
+     * @return Returns the estimated heap size of the rendered score
+     */
+    long renderingSize() {
+        if (canvas == null) return 0;
+        Dimension d = canvas.getPreferredSize();
+        // the score is painted from an ARGB image of its full size
+        return (d == null ? 0 : 4L * d.width * d.height) + (long) elements * RENDITION_SIZE;
+    }
+
+    /**
+     * @return Returns the estimated heap size of the parsed tune
+     */
+    long tuneSize() {
+        if (tune == null) return compact == null ? 0 : compact.sizeInBytes();
+        return (long) elements * ELEMENT_SIZE;
+    }
+
+    /**
+     * Drops the rendered score, the tab stays empty until it is shown again.
+     */
+    void dropRendering() {
+        if (canvas == null) return;
+        view.setViewportView(null);
+        canvas = null;
+    }
+
+    /**
+     * Drops the rendered score and the tune, if the tune can be built or
+     * loaded again. Only its compact form stays in memory.
+     * @return Returns false if the tune has no file and no exact compact form and was kept
+     */
+    boolean dropTune() {
+        if (tune == null) return false;
+        CompactTune c = CompactTune.of(tune);
+        if (!c.isExact()) {
+            if (source == null) return false;
+            c = null;
+        }
+        dropRendering();
+        compact = c;
+        tune = null;
+        return true;
+    }
+
+    private void setTune(Tune t) {
+        tune = t;
+        compact = null;
+        elements = 0;
+        for (Object voice : t.getMusic().getVoices()) {
+            elements += ((Voice) voice).size();
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package bagpipeplayer;
+
+import abc.notation.Tune;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * The tunes open in the main window, in tab order, kept within a memory budget.
+ * <p>
+ * Whenever a tune is shown, the other documents are trimmed until the
+ * estimated total fits the budget, least recently shown first: their
+ * rendered scores go before any parsed tune does, as a score can be rendered
+ * again from the tune much faster than a tune can be loaded.
+ */
+class TuneDocuments {
+
+    private final List<TuneDocument> documents = new ArrayList<TuneDocument>();
+    private final long budget;
+    private long clock;
+
+    /**
+     * @param budget memory for all documents together (bytes)
+     */
+    TuneDocuments(long budget) {
+        this.budget = budget;
+    }
+
+    void add(TuneDocument document) {
+        documents.add(document);
+    }
+
+    void remove(TuneDocument document) {
+        documents.remove(document);
+    }
+
+    /**
+     * @return Returns the document in the tab with the index
+     */
+    TuneDocument get(int index) {
+        return documents.get(index);
+    }
+
+    /**
+     * @return Returns the document of the file or null if it isn't open
+     */
+    TuneDocument find(File file) {
+        for (TuneDocument d : documents) {
+            if (file.equals(d.getSource())) return d;
+        }
+        return null;
+    }
+
+    /**
+     * @return Returns the document showing the tune or null
+     */
+    TuneDocument find(Tune tune) {
+        for (TuneDocument d : documents) {
+            if (d.peekTune() == tune) return d;
+        }
+        return null;
+    }
+
+    /**
+     * Renders a document and trims the others to the budget.
+     * @param document the document to show
+     * @param keep a tune that must stay in memory (e.g. because it plays) or null
+     * @return Returns the score of the document
+     * @throws IOException if the document's file can't be read
+     */
+    ScoreCanvas show(TuneDocument document, Tune keep) throws IOException {
+        document.lastShown = ++clock;
+        ScoreCanvas canvas = document.getCanvas();
+        trim(document, keep);
+        return canvas;
+    }
+
+    /**
+     * @return Returns the estimated memory used by all documents
+     */
+    long usage() {
+        long used = 0;
+        for (TuneDocument d : documents) {
+            used += d.renderingSize() + d.tuneSize();
+        }
+        return used;
+    }
+
+    private void trim(TuneDocument shown, Tune keep) {
+        long used = usage();
+        if (used <= budget) return;
+
+        List<TuneDocument> lru = new ArrayList<TuneDocument>(documents);
+        lru.remove(shown);
+        Collections.sort(lru, new Comparator<TuneDocument>() {
+            public int compare(TuneDocument a, TuneDocument b) {
+                return a.lastShown < b.lastShown ? -1 : (a.lastShown == b.lastShown ? 0 : 1);
+            }
+        });
+        for (TuneDocument d : lru) {
+            if (used <= budget) return;
+            used -= d.renderingSize();
+            d.dropRendering();
+        }
+        for (TuneDocument d : lru) {
+            if (used <= budget) return;
+            if (d.peekTune() == keep) continue;
+            long size = d.tuneSize();
+            if (d.dropTune()) used -= size - d.tuneSize();
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package bagpipeplayer;
+
+import abc.notation.KeySignature;
+import abc.notation.Note;
+import abc.notation.Tune;
+import abc.notation.Voice;
+import java.util.Arrays;
+
+/**
+ * What a tune sounds like, reduced to a few numbers for finding copies.
+ * <p>
+ * The tune is read as a stream of (pitch, duration) tokens; titles, other
+ * headers, layout and whitespace don't take part. A polynomial hash over the
+ * whole stream identifies exact copies. For near copies (a changed note or
+ * bar) a rolling hash over every run of {@link #SHINGLE} tokens feeds a
+ * MinHash signature: the share of equal signature entries of two tunes
+ * estimates how many of these runs they have in common.
+ */
+public final class TuneFingerprint {
+
+    /**
+     * Number of tokens hashed together for the near copy signature
+     */
+    static final int SHINGLE = 4;
+    /**
+     * Length of the MinHash signature
+     */
+    static final int SIGNATURE_LENGTH = 64;
+
+    private static final long BASE = 0x100000001B3L;
+    private static final long[] SEEDS = new long[SIGNATURE_LENGTH];
+    /**
+     * BASE to the power of SHINGLE, to roll the oldest token out of the window
+     */
+    private static final long BASE_POWER;
+
+    static {
+        long seed = 0x9E3779B97F4A7C15L;
+        for (int i = 0; i < SEEDS.length; i++) {
+            seed = mix(seed + 0x9E3779B97F4A7C15L);
+            SEEDS[i] = seed;
+        }
+        long power = 1;
+        for (int i = 0; i < SHINGLE; i++) power *= BASE;
+        BASE_POWER = power;
+    }
+
+    private final long contentHash;
+    private final int length;
+    private final long[] signature;
+
+    private TuneFingerprint(long contentHash, int length, long[] signature) {
+        this.contentHash = contentHash;
+        this.length = length;
+        this.signature = signature;
+    }
+
+    /**
+     * Fingerprints a tune in one pass over its notes.
+     * @param tune the tune
+     * @return Returns the fingerprint
+     */
+    public static TuneFingerprint of(Tune tune) {
+        long[] signature = new long[SIGNATURE_LENGTH];
+        Arrays.fill(signature, Long.MAX_VALUE);
+        long content = 0, window = 0;
+        int[] recent = new int[SHINGLE];
+        int length = 0;
+        KeySignature key = tune.getKey();
+
+        for (Object v : tune.getMusic().getVoices()) {
+            Voice voice = (Voice) v;
+            for (int i = 0; i < voice.size(); i++) {
+                Object element = voice.elementAt(i);
+                if (element instanceof KeySignature) key = (KeySignature) element;
+                if (!(element instanceof Note)) continue;
+                int token = token((Note) element, key);
+                content = content * BASE + token;
+                // roll: drop the token which left the window, add the new one
+                window = window * BASE + token - (length >= SHINGLE ? recent[length % SHINGLE] * BASE_POWER : 0);
+                recent[length % SHINGLE] = token;
+                length++;
+                if (length >= SHINGLE) add(signature, window);
+            }
+        }
+        if (length > 0 && length < SHINGLE) add(signature, window);
+        return new TuneFingerprint(mix(content + length), length, signature);
+    }
+
+    /**
+     * @return Returns the hash of the whole note stream
+     */
+    public long getContentHash() {
+        return contentHash;
+    }
+
+    /**
+     * @return Returns the number of notes and rests
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * @return Returns true if both tunes have exactly the same notes
+     */
+    public boolean sameContent(TuneFingerprint other) {
+        return contentHash == other.contentHash && length == other.length;
+    }
+
+    /**
+     * @return Returns the estimated share of note runs both tunes have in
+     * common, between 0 and 1
+     */
+    public double similarity(TuneFingerprint other) {
+        if (length == 0 || other.length == 0) return sameContent(other) ? 1 : 0;
+        int equal = 0;
+        for (int i = 0; i < SIGNATURE_LENGTH; i++) {
+            if (signature[i] == other.signature[i]) equal++;
+        }
+        return equal / (double) SIGNATURE_LENGTH;
+    }
+
+    /**
+     * @return Returns the signature entry i
+     */
+    long signature(int i) {
+        return signature[i];
+    }
+
+    private static void add(long[] signature, long shingle) {
+        for (int i = 0; i < SIGNATURE_LENGTH; i++) {
+            long h = mix(shingle ^ SEEDS[i]);
+            if (h < signature[i]) signature[i] = h;
+        }
+    }
+
+    /**
+     * Pitch (as MIDI key, with the key signature applied) and duration of a
+     * note, the same no matter how it was written
+     */
+    private static int token(Note note, KeySignature key) {
+        int pitch = 0;
+        if (!note.isRest()) {
+            pitch = (key == null ? note.getMidiLikeHeight() : note.getMidiLikeHeight(key)) & 0xFF;
+        }
+        return pitch | note.getDuration() << 8;
+    }
+
+    /**
+     * Finalizer of MurmurHash3, spreads every input bit over the whole result
+     */
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,173 @@
+package bagpipeplayer;
+
+import abc.notation.Tune;
+import abc.parser.TuneParser;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.regex.Pattern;
+
+/**
+ * Loads tunes from the file formats registered here: BWW and BMW (Bagpipe
+ * Music Writer) and ABC to begin with.
+ * <p>
+ * The format is recognized by the content, not by the file name: only the
+ * first {@link #SNIFF_LENGTH} bytes are read and offered to every format,
+ * and the file is then parsed once by the format which recognized it. The
+ * file extension is only used when no format recognizes the content.
+ */
+final class TuneLoader {
+
+    /**
+     * A file format tunes can be loaded from.
+     */
+    interface Format {
+
+        /**
+         * @param head the beginning of the file (ISO-8859-1)
+         * @return Returns true if the file is in this format
+         */
+        boolean recognizes(String head);
+
+        /**
+         * @param name a file name
+         * @return Returns true if files of this format are usually named like that
+         */
+        boolean matchesName(String name);
+
+        /**
+         * Loads a tune from a file in this format.
+         * @param file the file
+         * @return Returns the tune
+         * @throws IOException if the file can't be read
+         */
+        Tune load(File file) throws IOException;
+    }
+
+    /**
+     * Bytes read to recognize the format
+     */
+    static final int SNIFF_LENGTH = 4096;
+
+    /**
+     * BWW and BMW files start with the writing program's name and version,
+     * e.g. "Bagpipe Reader:1.0" or "Bagpipe Music Writer Gold:1.0"
+     */
+    private static final Pattern BWW_HEADER = Pattern.compile(
+            "(?m)^\\s*Bagpipe (Reader|Music Writer|Musicworks)[^:\\r\\n]*:");
+    /**
+     * ABC tunes start with a reference number field, files may start with a version comment
+     */
+    private static final Pattern ABC_HEADER = Pattern.compile("(?m)^(X:|%abc)");
+
+    /**
+     * The converter shared by everything loading BWW files
+     */
+    static final BwwConverter BWW = new BwwConverter();
+    private static final List<Format> FORMATS = new CopyOnWriteArrayList<Format>();
+
+    static {
+        register(new Format() {
+            public boolean recognizes(String head) {
+                return BWW_HEADER.matcher(head).find();
+            }
+
+            public boolean matchesName(String name) {
+                return name.endsWith(".bww") || name.endsWith(".bmw");
+            }
+
+            public Tune load(File file) throws IOException {
+                BwwConverter.Result bww = BWW.convert(file);
+                for (BwwDiagnostic d : bww.getDiagnostics()) {
+                    System.err.println(file.getName() + ":" + d);
+                }
+                return bww.getTune();
+            }
+        });
+        register(new Format() {
+            public boolean recognizes(String head) {
+                return ABC_HEADER.matcher(head).find();
+            }
+
+            public boolean matchesName(String name) {
+                return name.endsWith(".abc");
+            }
+
+            public Tune load(File file) throws IOException {
+                return new TuneParser().parse(file);
+            }
+        });
+    }
+
+    private TuneLoader() {
+    }
+
+    /**
+     * Adds a format. Formats are asked in the order they were registered.
+     * @param format the format
+     */
+    static void register(Format format) {
+        FORMATS.add(format);
+    }
+
+    /**
+     * Loads a tune. Problems in a BWW file are reported on System.err, the
+     * tune contains whatever could be understood.
+     * @param file a file in one of the registered formats
+     * @return Returns the tune
+     * @throws IOException if the file can't be read or its format is unknown
+     */
+    static Tune load(File file) throws IOException {
+        Format format = detect(file);
+        if (format == null) {
+            throw new IOException(file.getName() + ": unknown file format");
+        }
+        return format.load(file);
+    }
+
+    /**
+     * @param file a file
+     * @return Returns the format of the file or null if it is none of the registered ones
+     * @throws IOException if the file can't be read
+     */
+    static Format detect(File file) throws IOException {
+        String head = readHead(file);
+        for (Format format : FORMATS) {
+            if (format.recognizes(head)) return format;
+        }
+        for (Format format : FORMATS) {
+            if (format.matchesName(file.getName().toLowerCase())) return format;
+        }
+        return null;
+    }
+
+    /**
+     * @param file a file
+     * @return Returns true if the file is named like one of the registered formats
+     */
+    static boolean hasKnownName(File file) {
+        String name = file.getName().toLowerCase();
+        for (Format format : FORMATS) {
+            if (format.matchesName(name)) return true;
+        }
+        return false;
+    }
+
+    private static String readHead(File file) throws IOException {
+        byte[] head = new byte[SNIFF_LENGTH];
+        int length = 0;
+        InputStream in = new FileInputStream(file);
+        try {
+            int n;
+            while (length < head.length && (n = in.read(head, length, head.length - length)) > 0) {
+                length += n;
+            }
+        } finally {
+            in.close();
+        }
+        return new String(head, 0, length, "ISO-8859-1");
+    }
+}